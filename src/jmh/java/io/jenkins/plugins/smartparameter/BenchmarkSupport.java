@@ -0,0 +1,98 @@
+package io.jenkins.plugins.smartparameter;
+
+import org.kohsuke.stapler.StaplerRequest;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Synthetic requests and condition sets shared by the visibility benchmarks.
+ */
+final class BenchmarkSupport {
+
+    /** Number of distinct control parameters referenced by generated conditions. */
+    static final int CONTROL_PARAMETERS = 16;
+
+    private static final String[] CONDITION_TYPES = {"equals", "contains", "startsWith", "regex"};
+
+    private BenchmarkSupport() {
+    }
+
+    static String controlParameter(int index) {
+        return "CONTROL_" + (index % CONTROL_PARAMETERS);
+    }
+
+    static String controlValue(int index) {
+        return "value-" + (index % CONTROL_PARAMETERS) + "-suffix";
+    }
+
+    /**
+     * Builds a stub request holding a value for every generated control parameter.
+     * Only the parameter lookups used during evaluation are supported.
+     */
+    static StaplerRequest request() {
+        Map<String, String[]> parameters = new HashMap<>();
+        for (int i = 0; i < CONTROL_PARAMETERS; i++) {
+            parameters.put(controlParameter(i), new String[] {controlValue(i)});
+        }
+        return request(parameters);
+    }
+
+    static StaplerRequest request(Map<String, String[]> parameters) {
+        Map<String, String[]> values = Collections.unmodifiableMap(parameters);
+        return (StaplerRequest) Proxy.newProxyInstance(
+                StaplerRequest.class.getClassLoader(),
+                new Class<?>[] {StaplerRequest.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getParameterValues":
+                            return values.get((String) args[0]);
+                        case "getParameter":
+                            String[] found = values.get((String) args[0]);
+                            return found == null || found.length == 0 ? null : found[0];
+                        case "getParameterMap":
+                            return values;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "BenchmarkRequest" + values.keySet();
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    /**
+     * Generates conditions cycling through equals, contains, startsWith and regex.
+     * With {@code matching} every condition holds for {@link #request()}, otherwise none does,
+     * so the caller can pick the combination that defeats short-circuiting for its operator.
+     */
+    static List<ParameterCondition> conditions(int count, boolean matching) {
+        List<ParameterCondition> conditions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String type = CONDITION_TYPES[i % CONDITION_TYPES.length];
+            conditions.add(new ParameterCondition(controlParameter(i), type, operand(type, i, matching)));
+        }
+        return conditions;
+    }
+
+    private static String operand(String type, int index, boolean matching) {
+        int control = index % CONTROL_PARAMETERS;
+        switch (type) {
+            case "equals":
+                return matching ? controlValue(index) : "other-" + control;
+            case "contains":
+                return matching ? "-" + control + "-" : "-missing-";
+            case "startsWith":
+                return matching ? "value-" + control : "other";
+            default:
+                return matching ? "value-\\d+-suf.*" : "other-\\d+";
+        }
+    }
+}
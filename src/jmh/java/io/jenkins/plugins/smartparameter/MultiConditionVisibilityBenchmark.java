@@ -0,0 +1,67 @@
+package io.jenkins.plugins.smartparameter;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@code isVisible} on the multi-condition definitions for growing condition sets.
+ * Conditions are generated so that neither operator short-circuits: all hold for AND, none for OR.
+ * The visibility cache is disabled, so that every call evaluates the conditions instead of looking up the
+ * decision for the benchmark's constant request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dio.jenkins.plugins.smartparameter.VisibilityCache.maxSize=0")
+public class MultiConditionVisibilityBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int conditionCount;
+
+    @Param({"AND", "OR"})
+    public String logicalOperator;
+
+    private StaplerRequest request;
+    private MultiConditionParameterDefinition parameter;
+    private MultiConditionWrapperDefinition wrapper;
+
+    @Setup
+    public void setUp() {
+        request = BenchmarkSupport.request();
+        List<ParameterCondition> conditions =
+                BenchmarkSupport.conditions(conditionCount, "AND".equals(logicalOperator));
+
+        parameter = new MultiConditionParameterDefinition("PARAMETER", "benchmark", "default");
+        parameter.setLogicalOperator(logicalOperator);
+        parameter.setConditions(conditions);
+
+        wrapper = new MultiConditionWrapperDefinition("WRAPPER", "benchmark");
+        wrapper.setLogicalOperator(logicalOperator);
+        wrapper.setConditions(conditions);
+    }
+
+    @Benchmark
+    public boolean multiConditionParameter() {
+        return parameter.isVisible(request);
+    }
+
+    @Benchmark
+    public boolean multiConditionWrapper() {
+        return wrapper.isVisible(request);
+    }
+}
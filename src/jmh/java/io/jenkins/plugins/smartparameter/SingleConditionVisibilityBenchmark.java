@@ -0,0 +1,66 @@
+package io.jenkins.plugins.smartparameter;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@code isVisible} on the single-condition definitions for each condition type.
+ * The visibility cache is disabled, so that every call evaluates the conditions instead of looking up the
+ * decision for the benchmark's constant request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dio.jenkins.plugins.smartparameter.VisibilityCache.maxSize=0")
+public class SingleConditionVisibilityBenchmark {
+
+    @Param({"equals", "contains", "startsWith", "regex"})
+    public String condition;
+
+    private StaplerRequest request;
+    private SmartParameterDefinition parameter;
+    private SmartWrapperParameterDefinition wrapper;
+
+    @Setup
+    public void setUp() {
+        request = BenchmarkSupport.request();
+        ParameterCondition generated = BenchmarkSupport.conditions(4, true).stream()
+                .filter(c -> c.getCondition().equals(condition))
+                .findFirst()
+                .orElseThrow(IllegalStateException::new);
+
+        parameter = new SmartParameterDefinition("PARAMETER", "benchmark", "default");
+        parameter.setControlParameter(generated.getControlParameter());
+        parameter.setCondition(generated.getCondition());
+        parameter.setControlValue(generated.getControlValue());
+
+        wrapper = new SmartWrapperParameterDefinition("WRAPPER", "benchmark");
+        wrapper.setControlParameter(generated.getControlParameter());
+        wrapper.setCondition(generated.getCondition());
+        wrapper.setControlValue(generated.getControlValue());
+    }
+
+    @Benchmark
+    public boolean smartParameter() {
+        return parameter.isVisible(request);
+    }
+
+    @Benchmark
+    public boolean smartWrapper() {
+        return wrapper.isVisible(request);
+    }
+}
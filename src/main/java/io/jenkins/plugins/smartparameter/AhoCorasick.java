@@ -0,0 +1,92 @@
+package io.jenkins.plugins.smartparameter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aho-Corasick automaton answering whether a text contains any of a fixed set of needles,
+ * in one pass over the text regardless of how many needles there are.
+ */
+final class AhoCorasick {
+
+    private final List<Map<Character, Integer>> transitions = new ArrayList<>();
+    private final int[] failure;
+    private final boolean[] terminal;
+
+    /**
+     * Builds the automaton. Empty needles are ignored.
+     * @param needles The strings to search for
+     */
+    AhoCorasick(Collection<String> needles) {
+        transitions.add(new HashMap<>());
+        List<Boolean> ends = new ArrayList<>();
+        ends.add(false);
+
+        // Trie of all needles
+        for (String needle : needles) {
+            if (needle.isEmpty()) {
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < needle.length(); i++) {
+                Integer next = transitions.get(state).get(needle.charAt(i));
+                if (next == null) {
+                    next = transitions.size();
+                    transitions.add(new HashMap<>());
+                    ends.add(false);
+                    transitions.get(state).put(needle.charAt(i), next);
+                }
+                state = next;
+            }
+            ends.set(state, true);
+        }
+
+        failure = new int[transitions.size()];
+        terminal = new boolean[transitions.size()];
+        for (int i = 0; i < terminal.length; i++) {
+            terminal[i] = ends.get(i);
+        }
+
+        // Failure links in breadth-first order; a state is terminal if any suffix of it is
+        Deque<Integer> queue = new ArrayDeque<>(transitions.get(0).values());
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (Map.Entry<Character, Integer> edge : transitions.get(state).entrySet()) {
+                int child = edge.getValue();
+                int fallback = failure[state];
+                while (fallback != 0 && !transitions.get(fallback).containsKey(edge.getKey())) {
+                    fallback = failure[fallback];
+                }
+                Integer target = transitions.get(fallback).get(edge.getKey());
+                failure[child] = target != null && target != child ? target : 0;
+                terminal[child] |= terminal[failure[child]];
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * @return true if the text contains at least one needle
+     */
+    boolean containsAny(String text) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            Integer next = transitions.get(state).get(c);
+            while (next == null && state != 0) {
+                state = failure[state];
+                next = transitions.get(state).get(c);
+            }
+            state = next == null ? 0 : next;
+            if (terminal[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,574 @@
+package io.jenkins.plugins.smartparameter;
+
+import hudson.util.FormValidation;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Boolean combination of conditions, compiled once into a short-circuiting evaluation tree.
+ * <p>
+ * Expressions combine comparisons with {@code AND}, {@code OR}, {@code NOT} and parentheses, e.g.
+ * {@code (ENV == prod AND REGION startsWith eu) OR OVERRIDE == "true"}. A comparison is a parameter name,
+ * an operator ({@code ==}, {@code =}, {@code !=}, {@code =~} or a condition name such as {@code contains}
+ * or {@code in}) and a value, quoted if it contains spaces, parentheses or operator characters. The name can be
+ * written as {@code any(NAME)} or {@code all(NAME)} to choose how a multi-valued parameter is matched;
+ * {@code any} is the default.
+ * <p>
+ * Within each group, children start out ordered cheapest first, so that expensive conditions such as regular
+ * expressions only run when the cheap ones do not decide the result. As the tree is evaluated, each group
+ * revises its order about every {@link #REORDER_INTERVAL} evaluations from the observed time and outcome of its
+ * children: a cheap condition that rarely decides the result moves behind a costlier one that usually does.
+ * The client evaluates the same tree, starting from the order and cost estimates of the server.
+ */
+public final class ConditionExpression {
+
+    /** Evaluations of a group between two revisions of its order; 0 keeps the initial order. */
+    static final int REORDER_INTERVAL =
+            Integer.getInteger(ConditionExpression.class.getName() + ".reorderInterval", 256);
+
+    /** A node records the time and outcome of about one in this many evaluations. */
+    private static final int SAMPLE_RATE = 16;
+
+    /** Measurements of a node needed before they replace the estimate from its static cost. */
+    private static final int MIN_SAMPLES = 4;
+
+    /** Estimated time per unit of static cost, used until a node has been measured. */
+    private static final double NANOS_PER_COST_UNIT = 25;
+
+    /** Expression that always holds, used when there are no conditions. */
+    static final ConditionExpression ALWAYS = new ConditionExpression(new Group(true, Collections.emptyList()));
+
+    private final Node root;
+    private final List<ParameterCondition> conditions;
+
+    private ConditionExpression(Node root) {
+        this.root = root;
+        List<ParameterCondition> leaves = new ArrayList<>();
+        root.collect(leaves);
+        this.conditions = Collections.unmodifiableList(leaves);
+    }
+
+    /**
+     * Compiles a flat list of conditions combined with one logical operator.
+     * @param conditions The conditions, may be null
+     * @param logicalOperator "AND" or "OR"
+     * @return the compiled expression; it always holds if there are no conditions
+     */
+    static ConditionExpression of(List<ParameterCondition> conditions, String logicalOperator) {
+        if (conditions == null || conditions.isEmpty()) {
+            return ALWAYS;
+        }
+        List<Node> leaves = new ArrayList<>();
+        for (ParameterCondition condition : conditions) {
+            leaves.add(new Leaf(condition));
+        }
+        return new ConditionExpression(new Group(!"OR".equals(logicalOperator), leaves));
+    }
+
+    /**
+     * Compiles the visibility rule of a multiple-condition parameter: the expression if one is set,
+     * otherwise the conditions combined with the logical operator.
+     * @return the compiled expression; an invalid expression never restricts visibility
+     */
+    static ConditionExpression compile(String expression, List<ParameterCondition> conditions,
+                                       String logicalOperator) {
+        if (expression == null || expression.trim().isEmpty()) {
+            return of(conditions, logicalOperator);
+        }
+        try {
+            return parse(expression);
+        } catch (ParseException e) {
+            return ALWAYS;
+        }
+    }
+
+    /**
+     * Validates an expression for the configuration form.
+     */
+    static FormValidation validate(String expression) {
+        if (expression == null || expression.trim().isEmpty()) {
+            return FormValidation.ok();
+        }
+        try {
+            parse(expression);
+            return FormValidation.ok();
+        } catch (ParseException e) {
+            return FormValidation.error(e.getMessage() + " (at character " + (e.getErrorOffset() + 1) + ")");
+        }
+    }
+
+    /**
+     * Parses and compiles an expression.
+     * @param text The expression as configured
+     * @return the compiled expression
+     * @throws ParseException if the expression is malformed, with the offset of the problem
+     */
+    static ConditionExpression parse(String text) throws ParseException {
+        Parser parser = new Parser(text);
+        Node root = parser.parseOr();
+        if (parser.peek() != null) {
+            throw new ParseException("Unexpected '" + parser.peek().text + "'", parser.peek().offset);
+        }
+        return new ConditionExpression(root);
+    }
+
+    /**
+     * @param values The values of other parameters
+     * @return true if the expression holds
+     */
+    boolean evaluate(ControlValues values) {
+        return root.evaluate(values, true);
+    }
+
+    /**
+     * Evaluates the expression without recording statistics or revising the order of its groups, for callers
+     * such as {@link DecisionTable} whose values do not reflect those of real builds.
+     * @param values The values of other parameters
+     * @return true if the expression holds
+     */
+    boolean evaluateUnmeasured(ControlValues values) {
+        return root.evaluate(values, false);
+    }
+
+    /**
+     * @return the conditions at the leaves of the tree, in their initial evaluation order
+     */
+    List<ParameterCondition> getConditions() {
+        return conditions;
+    }
+
+    /**
+     * @return the tree for the client: groups as {@code {"op": "and"|"or", "children": [...]}},
+     *         negations as {@code {"op": "not", "child": ...}} and leaves as {@code {"leaf": INDEX}}
+     *         into {@link #getConditions()}
+     */
+    JSONObject toJson() {
+        return root.toJson(conditions);
+    }
+
+    /**
+     * A node of the tree. Each node records how long a random sample of about one in {@link #SAMPLE_RATE} of its
+     * evaluations takes and whether it holds, so that its group can order its children by observed cost and
+     * selectivity. Other evaluations write nothing shared, so evaluating threads do not contend on the statistics.
+     */
+    private abstract static class Node {
+        private long samples;
+        private long holds;
+        private long sampledNanos;
+
+        /**
+         * @param measured Whether the evaluation may be sampled and may revise the order of groups
+         */
+        final boolean evaluate(ControlValues values, boolean measured) {
+            if (!measured || ThreadLocalRandom.current().nextInt(SAMPLE_RATE) != 0) {
+                return test(values, measured);
+            }
+            long start = System.nanoTime();
+            boolean result = test(values, true);
+            record(result, System.nanoTime() - start);
+            return result;
+        }
+
+        abstract boolean test(ControlValues values, boolean measured);
+
+        private synchronized void record(boolean result, long nanos) {
+            samples++;
+            sampledNanos += nanos;
+            if (result) {
+                holds++;
+            }
+        }
+
+        /** Relative cost of evaluating this node in the worst case. */
+        abstract int cost();
+
+        abstract void collect(List<ParameterCondition> leaves);
+
+        abstract JSONObject toJson(List<ParameterCondition> leaves);
+
+        /**
+         * @return the measured mean time of one evaluation, or an estimate from {@link #cost()} until the node
+         *         has been measured often enough
+         */
+        synchronized double estimatedNanos() {
+            return samples < MIN_SAMPLES ? cost() * NANOS_PER_COST_UNIT : (double) sampledNanos / samples;
+        }
+
+        /**
+         * @param and Whether the node is the child of an AND group
+         * @return the probability that the node decides its group: that it fails in an AND group or holds in an
+         *         OR group, smoothed so that a node that has not been evaluated yet counts as deciding half the time
+         */
+        synchronized double decisiveness(boolean and) {
+            long decisive = and ? samples - holds : holds;
+            return (decisive + 1.0) / (samples + 2.0);
+        }
+
+        /**
+         * Halves the statistics, so that recent evaluations weigh more than old ones. A node that rarely runs, such
+         * as one placed after a child that nearly always decides the group, keeps what it has observed; forgetting
+         * it would fall back to the static estimate and move the node back to the front.
+         */
+        synchronized void decay() {
+            if (samples < 2 * MIN_SAMPLES) {
+                return;
+            }
+            holds /= 2;
+            samples /= 2;
+            sampledNanos /= 2;
+        }
+    }
+
+    private static final class Leaf extends Node {
+        private final ParameterCondition condition;
+
+        Leaf(ParameterCondition condition) {
+            this.condition = condition;
+        }
+
+        @Override
+        boolean test(ControlValues values, boolean measured) {
+            ConditionPredicate predicate = condition.getPredicate();
+            return measured ? predicate.evaluate(values) : predicate.matches(values);
+        }
+
+        @Override
+        int cost() {
+            return condition.getPredicate().cost();
+        }
+
+        @Override
+        void collect(List<ParameterCondition> leaves) {
+            leaves.add(condition);
+        }
+
+        @Override
+        JSONObject toJson(List<ParameterCondition> leaves) {
+            JSONObject json = new JSONObject();
+            json.put("leaf", leaves.indexOf(condition));
+            return json;
+        }
+    }
+
+    private static final class Group extends Node {
+        private final boolean and;
+        private final int cost;
+        /** Children in evaluation order, replaced as a whole when the order is revised. */
+        private volatile Node[] children;
+
+        Group(boolean and, List<Node> children) {
+            this.and = and;
+            List<Node> sorted = new ArrayList<>();
+            for (Node child : children) {
+                // (a AND b) AND c is a AND b AND c
+                if (child instanceof Group && ((Group) child).and == and) {
+                    Collections.addAll(sorted, ((Group) child).children);
+                } else {
+                    sorted.add(child);
+                }
+            }
+            sorted.sort(Comparator.comparingInt(Node::cost));
+            this.children = sorted.toArray(new Node[0]);
+            int total = 0;
+            for (Node child : this.children) {
+                total += child.cost();
+            }
+            this.cost = total;
+        }
+
+        @Override
+        boolean test(ControlValues values, boolean measured) {
+            Node[] current = children;
+            // Reviewing at random rather than on a shared counter keeps evaluations free of shared writes
+            if (measured && REORDER_INTERVAL > 0 && current.length > 1
+                    && ThreadLocalRandom.current().nextInt(REORDER_INTERVAL) == 0) {
+                current = reorder(current);
+            }
+            for (Node child : current) {
+                if (child.evaluate(values, measured) != and) {
+                    return !and; // Short-circuit: false for AND, true for OR
+                }
+            }
+            return and;
+        }
+
+        /**
+         * Orders the children by expected time spent per decision, so that cheap children that usually decide
+         * the group run first. AND and OR are commutative and conditions have no side effects, so the order
+         * never changes the result.
+         * @return the children in their new order
+         */
+        private Node[] reorder(Node[] current) {
+            // Score first: the statistics may change while sorting
+            double[] scores = new double[current.length];
+            Integer[] positions = new Integer[current.length];
+            for (int i = 0; i < current.length; i++) {
+                scores[i] = current[i].estimatedNanos() / current[i].decisiveness(and);
+                positions[i] = i;
+                current[i].decay();
+            }
+            Arrays.sort(positions, Comparator.comparingDouble(i -> scores[i]));
+
+            Node[] sorted = new Node[current.length];
+            boolean changed = false;
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = current[positions[i]];
+                changed |= positions[i] != i;
+            }
+            if (!changed) {
+                return current;
+            }
+            children = sorted;
+            SmartParameterMetrics.increment(SmartParameterMetrics.EXPRESSION_REORDERS);
+            return sorted;
+        }
+
+        @Override
+        int cost() {
+            return cost;
+        }
+
+        @Override
+        void collect(List<ParameterCondition> leaves) {
+            for (Node child : children) {
+                child.collect(leaves);
+            }
+        }
+
+        @Override
+        JSONObject toJson(List<ParameterCondition> leaves) {
+            JSONArray json = new JSONArray();
+            for (Node child : children) {
+                JSONObject node = child.toJson(leaves);
+                node.put("cost", Math.round(child.estimatedNanos()));
+                json.add(node);
+            }
+            JSONObject group = new JSONObject();
+            group.put("op", and ? "and" : "or");
+            group.put("children", json);
+            return group;
+        }
+    }
+
+    private static final class Not extends Node {
+        private final Node child;
+
+        Not(Node child) {
+            this.child = child;
+        }
+
+        @Override
+        boolean test(ControlValues values, boolean measured) {
+            return !child.evaluate(values, measured);
+        }
+
+        @Override
+        int cost() {
+            return child.cost();
+        }
+
+        @Override
+        void collect(List<ParameterCondition> leaves) {
+            child.collect(leaves);
+        }
+
+        @Override
+        JSONObject toJson(List<ParameterCondition> leaves) {
+            JSONObject json = new JSONObject();
+            json.put("op", "not");
+            json.put("child", child.toJson(leaves));
+            return json;
+        }
+    }
+
+    /**
+     * Recursive descent parser; AND binds tighter than OR.
+     */
+    private static final class Parser {
+        private final List<Token> tokens;
+        private final int length;
+        private int position;
+
+        Parser(String text) throws ParseException {
+            this.tokens = tokenize(text);
+            this.length = text.length();
+        }
+
+        Token peek() {
+            return position < tokens.size() ? tokens.get(position) : null;
+        }
+
+        private Token next(String expected) throws ParseException {
+            Token token = peek();
+            if (token == null) {
+                throw new ParseException("Expected " + expected + " at the end of the expression", length);
+            }
+            position++;
+            return token;
+        }
+
+        private boolean accept(String keyword, String symbol) {
+            Token token = peek();
+            if (token != null && !token.quoted
+                    && (keyword.equalsIgnoreCase(token.text) || symbol.equals(token.text))) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        Node parseOr() throws ParseException {
+            List<Node> children = new ArrayList<>();
+            children.add(parseAnd());
+            while (accept("OR", "||")) {
+                children.add(parseAnd());
+            }
+            return children.size() == 1 ? children.get(0) : new Group(false, children);
+        }
+
+        private Node parseAnd() throws ParseException {
+            List<Node> children = new ArrayList<>();
+            children.add(parseUnary());
+            while (accept("AND", "&&")) {
+                children.add(parseUnary());
+            }
+            return children.size() == 1 ? children.get(0) : new Group(true, children);
+        }
+
+        private Node parseUnary() throws ParseException {
+            if (accept("NOT", "!")) {
+                return new Not(parseUnary());
+            }
+            if (accept("(", "(")) {
+                Node inner = parseOr();
+                Token close = next("')'");
+                if (close.quoted || !")".equals(close.text)) {
+                    throw new ParseException("Expected ')' but found '" + close.text + "'", close.offset);
+                }
+                return inner;
+            }
+
+            Token name = next("a parameter name");
+            String match = null;
+            if (!name.quoted && isMatch(name.text) && accept("(", "(")) {
+                match = name.text.toLowerCase(Locale.ROOT);
+                name = next("a parameter name");
+                Token close = next("')'");
+                if (close.quoted || !")".equals(close.text)) {
+                    throw new ParseException("Expected ')' but found '" + close.text + "'", close.offset);
+                }
+            }
+            if (name.quoted || name.isSymbol()) {
+                throw new ParseException("Expected a parameter name but found '" + name.text + "'", name.offset);
+            }
+            Token operator = next("an operator");
+            String condition = operator.quoted ? null : conditionName(operator.text);
+            if (condition == null) {
+                throw new ParseException("Unknown operator '" + operator.text + "'", operator.offset);
+            }
+            Token value = next("a value");
+            if (!value.quoted && value.isSymbol()) {
+                throw new ParseException("Expected a value but found '" + value.text + "'", value.offset);
+            }
+            return new Leaf(ConditionPool.intern(new ParameterCondition(name.text, condition, value.text, match)));
+        }
+
+        private static boolean isMatch(String text) {
+            return ParameterCondition.MATCH_ANY.equalsIgnoreCase(text)
+                    || ParameterCondition.MATCH_ALL.equalsIgnoreCase(text);
+        }
+
+        private static String conditionName(String operator) {
+            switch (operator) {
+                case "==":
+                case "=":
+                    return "equals";
+                case "!=":
+                    return "notEquals";
+                case "=~":
+                    return "regex";
+                case "matches":
+                    return "regex";
+                default:
+                    ConditionPredicate.Op op = ConditionPredicate.Op.fromName(operator);
+                    return op == ConditionPredicate.Op.ALWAYS ? null : op.getConditionName();
+            }
+        }
+
+        private static List<Token> tokenize(String text) throws ParseException {
+            List<Token> tokens = new ArrayList<>();
+            int i = 0;
+            while (i < text.length()) {
+                char c = text.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '"' || c == '\'') {
+                    StringBuilder value = new StringBuilder();
+                    int start = i++;
+                    while (i < text.length() && text.charAt(i) != c) {
+                        if (text.charAt(i) == '\\' && i + 1 < text.length()) {
+                            i++;
+                        }
+                        value.append(text.charAt(i++));
+                    }
+                    if (i >= text.length()) {
+                        throw new ParseException("Unterminated string", start);
+                    }
+                    i++;
+                    tokens.add(new Token(value.toString(), start, true));
+                } else if (c == '(' || c == ')') {
+                    tokens.add(new Token(String.valueOf(c), i++, false));
+                } else if (isSymbolChar(c)) {
+                    int start = i;
+                    while (i < text.length() && isSymbolChar(text.charAt(i)) && i - start < 2) {
+                        i++;
+                    }
+                    tokens.add(new Token(text.substring(start, i), start, false));
+                } else {
+                    int start = i;
+                    while (i < text.length() && !Character.isWhitespace(text.charAt(i))
+                            && !isSymbolChar(text.charAt(i)) && "()\"'".indexOf(text.charAt(i)) < 0) {
+                        i++;
+                    }
+                    tokens.add(new Token(text.substring(start, i), start, false));
+                }
+            }
+            return tokens;
+        }
+
+        private static boolean isSymbolChar(char c) {
+            return "=!~&|".indexOf(c) >= 0;
+        }
+    }
+
+    private static final class Token {
+        final String text;
+        final int offset;
+        final boolean quoted;
+
+        Token(String text, int offset, boolean quoted) {
+            this.text = text;
+            this.offset = offset;
+            this.quoted = quoted;
+        }
+
+        boolean isSymbol() {
+            return !quoted && (text.isEmpty() || "()".contains(text) || isKeyword()
+                    || text.chars().allMatch(c -> "=!~&|".indexOf(c) >= 0));
+        }
+
+        private boolean isKeyword() {
+            String upper = text.toUpperCase(Locale.ROOT);
+            return upper.equals("AND") || upper.equals("OR") || upper.equals("NOT");
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package io.jenkins.plugins.smartparameter;
+
+import hudson.model.Job;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import jenkins.model.Jenkins;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Weak interning pool for conditions. Jobs generated from the same template carry identical conditions;
+ * interning them when they are loaded or configured lets all of those jobs share one instance, and with it
+ * one compiled predicate. A pooled condition is dropped once no definition refers to it any more.
+ */
+final class ConditionPool {
+
+    private static final Map<ParameterCondition, WeakReference<ParameterCondition>> POOL = new WeakHashMap<>();
+
+    /** How long a census is reused before all jobs are counted again. */
+    private static final long CENSUS_NANOS = TimeUnit.SECONDS.toNanos(
+            Long.getLong(ConditionPool.class.getName() + ".censusSeconds", 60));
+
+    private static long[] census;
+    private static long censusTaken;
+
+    private ConditionPool() {
+    }
+
+    /**
+     * @return the pooled condition equal to the given one, which is pooled if there is none yet
+     */
+    static ParameterCondition intern(ParameterCondition condition) {
+        if (condition == null) {
+            return null;
+        }
+        synchronized (POOL) {
+            WeakReference<ParameterCondition> pooled = POOL.get(condition);
+            ParameterCondition canonical = pooled == null ? null : pooled.get();
+            if (canonical != null) {
+                return canonical;
+            }
+            POOL.put(condition, new WeakReference<>(condition));
+            return condition;
+        }
+    }
+
+    /**
+     * @return a copy of the list holding the pooled conditions, or null if the list is null
+     */
+    static List<ParameterCondition> intern(List<ParameterCondition> conditions) {
+        if (conditions == null) {
+            return null;
+        }
+        List<ParameterCondition> interned = new ArrayList<>(conditions.size());
+        for (ParameterCondition condition : conditions) {
+            interned.add(intern(condition));
+        }
+        return interned;
+    }
+
+    /**
+     * @return the number of distinct conditions currently pooled
+     */
+    static int size() {
+        synchronized (POOL) {
+            return POOL.size();
+        }
+    }
+
+    /**
+     * Counts the conditions of all jobs, at most once per {@link #CENSUS_NANOS}, so that reading several
+     * metrics, or polling them, does not walk every job each time.
+     * @return the number of condition instances referred to by conditional parameters, and the number
+     *         of references to them, as {@code {unique, total}}
+     */
+    static synchronized long[] census() {
+        long now = System.nanoTime();
+        if (census == null || now - censusTaken >= CENSUS_NANOS) {
+            census = takeCensus();
+            censusTaken = now;
+        }
+        return census.clone();
+    }
+
+    /**
+     * Counts the conditions of all jobs now, without reusing an earlier census.
+     */
+    static long[] takeCensus() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null) {
+            return new long[] {0, 0};
+        }
+
+        Set<ParameterCondition> unique = Collections.newSetFromMap(new IdentityHashMap<>());
+        long total = 0;
+        try (ACLContext ignored = ACL.as2(ACL.SYSTEM2)) {
+            for (Job<?, ?> job : jenkins.allItems(Job.class)) {
+                for (ConditionalParameter parameter : VisibilityEvaluator.forJob(job)) {
+                    List<ParameterCondition> conditions = parameter.getVisibilityConditions();
+                    if (conditions != null) {
+                        unique.addAll(conditions);
+                        total += conditions.size();
+                    }
+                }
+            }
+        }
+        return new long[] {unique.size(), total};
+    }
+}
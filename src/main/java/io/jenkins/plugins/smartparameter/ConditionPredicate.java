@@ -0,0 +1,259 @@
+package io.jenkins.plugins.smartparameter;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Immutable, pre-compiled form of a single visibility condition.
+ * Regex patterns, value sets and multi-needle matchers are built once here instead of on every evaluation,
+ * see {@link RegexSupport} and {@link AhoCorasick}.
+ */
+final class ConditionPredicate {
+
+    /**
+     * Operation performed by a predicate.
+     */
+    enum Op {
+        EQUALS("equals"),
+        NOT_EQUALS("notEquals"),
+        CONTAINS("contains"),
+        STARTS_WITH("startsWith"),
+        ENDS_WITH("endsWith"),
+        REGEX("regex"),
+        IN("in"),
+        NOT_IN("notIn"),
+        CONTAINS_ANY("containsAny"),
+        ALWAYS(null);
+
+        private final String conditionName;
+
+        Op(String conditionName) {
+            this.conditionName = conditionName;
+        }
+
+        /**
+         * @return the condition name as stored in the job configuration
+         */
+        String getConditionName() {
+            return conditionName;
+        }
+
+        /**
+         * Looks up the operation for a configured condition name.
+         * @return the matching operation, or {@link #ALWAYS} for unknown names
+         */
+        static Op fromName(String conditionName) {
+            for (Op op : values()) {
+                if (op.conditionName != null && op.conditionName.equals(conditionName)) {
+                    return op;
+                }
+            }
+            return ALWAYS;
+        }
+    }
+
+    /** Predicate used for conditions that are not fully defined. */
+    static final ConditionPredicate ALWAYS_TRUE = new ConditionPredicate(null, Op.ALWAYS, null, null, false);
+
+    /** The condition timers measure about one in this many evaluations. */
+    private static final int SAMPLE_RATE = 16;
+
+    private final String controlParameter;
+    private final Op op;
+    private final String operand;
+    private final Predicate<String> matcher;
+    private final boolean all;
+    private final SmartParameterMetrics.Timer timer;
+
+    private ConditionPredicate(String controlParameter, Op op, String operand, Predicate<String> matcher,
+                               boolean all) {
+        this.controlParameter = controlParameter;
+        this.op = op;
+        this.operand = operand;
+        this.matcher = matcher;
+        this.all = all;
+        this.timer = op == Op.ALWAYS ? null : SmartParameterMetrics.timer("condition." + op.getConditionName());
+    }
+
+    /**
+     * Compiles a condition. Incomplete conditions and unknown condition types never restrict visibility.
+     * @param controlParameter The name of the parameter whose value is tested
+     * @param condition The condition type, e.g. "equals" or "regex"
+     * @param controlValue The value or pattern to compare against
+     * @param match "all" if every value of a multi-valued control parameter must meet the condition,
+     *              otherwise any value meeting it is enough
+     * @return the compiled predicate
+     */
+    static ConditionPredicate compile(String controlParameter, String condition, String controlValue,
+                                      String match) {
+        if (controlParameter == null || condition == null || controlValue == null) {
+            return ALWAYS_TRUE;
+        }
+
+        Op op = Op.fromName(condition);
+        if (op == Op.ALWAYS) {
+            return ALWAYS_TRUE;
+        }
+
+        Predicate<String> matcher = null;
+        switch (op) {
+            case REGEX:
+                try {
+                    matcher = RegexSupport.compile(controlValue);
+                } catch (PatternSyntaxException e) {
+                    // Invalid patterns never match, same as the client side
+                    matcher = null;
+                }
+                break;
+            case IN:
+            case NOT_IN:
+                matcher = new HashSet<>(splitList(controlValue))::contains;
+                break;
+            case CONTAINS_ANY:
+                matcher = new AhoCorasick(splitList(controlValue))::containsAny;
+                break;
+            default:
+                break;
+        }
+
+        return new ConditionPredicate(controlParameter, op, controlValue, matcher,
+                ParameterCondition.MATCH_ALL.equals(match));
+    }
+
+    /**
+     * Splits the control value of a list condition into its entries, separated by commas or new lines.
+     * Entries are trimmed and blank ones are skipped, the same as on the client side.
+     */
+    static List<String> splitList(String controlValue) {
+        List<String> entries = new ArrayList<>();
+        for (String entry : controlValue.split("[,\\n]")) {
+            String trimmed = entry.trim();
+            if (!trimmed.isEmpty()) {
+                entries.add(trimmed);
+            }
+        }
+        return entries;
+    }
+
+    String getControlParameter() {
+        return controlParameter;
+    }
+
+    Op getOp() {
+        return op;
+    }
+
+    String getOperand() {
+        return operand;
+    }
+
+    /**
+     * @return true if every value of the control parameter must meet the condition, false if any one must
+     */
+    boolean isAll() {
+        return all;
+    }
+
+    /**
+     * @return the relative cost of one evaluation, used to evaluate cheap conditions first
+     */
+    int cost() {
+        switch (op) {
+            case ALWAYS:
+                return 0;
+            case STARTS_WITH:
+            case ENDS_WITH:
+                return 2;
+            case CONTAINS:
+                return 3;
+            case CONTAINS_ANY:
+                return 4;
+            case REGEX:
+                return RegexSupport.canBacktrack(operand) ? 32 : 8;
+            default:
+                return 1; // Equality and hash set lookups
+        }
+    }
+
+    /**
+     * Tests a single value of the control parameter.
+     * @param value The current value of the control parameter
+     * @return true if the condition is met
+     */
+    boolean test(String value) {
+        switch (op) {
+            case EQUALS:
+                return operand.equals(value);
+            case NOT_EQUALS:
+                return !operand.equals(value);
+            case CONTAINS:
+                return value.contains(operand);
+            case STARTS_WITH:
+                return value.startsWith(operand);
+            case ENDS_WITH:
+                return value.endsWith(operand);
+            case REGEX:
+            case IN:
+            case CONTAINS_ANY:
+                return matcher != null && matcher.test(value);
+            case NOT_IN:
+                return !matcher.test(value);
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Evaluates the condition against the current values of the control parameter, timing a random sample of
+     * evaluations. A multi-valued parameter meets the condition if any of its distinct values does, or with
+     * "all" matching, if every one does.
+     * @param values The values of other parameters
+     * @return true if the condition is met
+     */
+    boolean evaluate(ControlValues values) {
+        if (op == Op.ALWAYS) {
+            return true; // If condition is not fully defined, do not restrict visibility
+        }
+        if (ThreadLocalRandom.current().nextInt(SAMPLE_RATE) != 0) {
+            return matches(values);
+        }
+
+        long start = System.nanoTime();
+        try {
+            return matches(values);
+        } finally {
+            timer.record(start);
+        }
+    }
+
+    /**
+     * Evaluates the condition like {@link #evaluate(ControlValues)}, without timing it.
+     */
+    boolean matches(ControlValues values) {
+        if (op == Op.ALWAYS) {
+            return true;
+        }
+
+        String[] current = values.get(controlParameter);
+        if (current == null || current.length == 0) {
+            return false; // No value found for control parameter
+        }
+
+        if (current.length == 1) {
+            return test(current[0]);
+        }
+
+        Set<String> distinct = values.distinct(controlParameter);
+        for (String value : distinct) {
+            if (test(value) != all) {
+                return !all; // Short-circuit: true for any, false for all
+            }
+        }
+        return all;
+    }
+}
@@ -0,0 +1,79 @@
+package io.jenkins.plugins.smartparameter;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Immutable, fully compiled visibility rule of a definition: the evaluation tree, the conditions at its
+ * leaves with their predicates compiled, and the decision cache that belongs to exactly this rule.
+ * <p>
+ * Definitions hold their snapshot in a single volatile field. It is compiled by the constructor, by each
+ * {@code @DataBoundSetter} that changes the rule and by {@code readResolve}, always on the thread that wrote the
+ * fields it is compiled from. Evaluating visibility only reads the field, so it always sees a complete snapshot
+ * and never compiles one.
+ */
+final class ConditionSnapshot {
+
+    private final ConditionExpression expression;
+    private final Predicate<ControlValues> evaluator;
+    private final VisibilityCache cache;
+
+    /**
+     * @param type The manifest type of the definition, used to name its evaluation timer
+     * @param expression The compiled visibility rule
+     */
+    ConditionSnapshot(String type, ConditionExpression expression) {
+        this.expression = expression;
+        this.evaluator = expression::evaluate;
+
+        Set<String> controlParameters = new LinkedHashSet<>();
+        for (ParameterCondition condition : expression.getConditions()) {
+            condition.getPredicate(); // Compile now rather than on the first evaluation
+            if (condition.getControlParameter() != null) {
+                controlParameters.add(condition.getControlParameter());
+            }
+        }
+        this.cache = new VisibilityCache(type, controlParameters);
+    }
+
+    /**
+     * @return the snapshot of a single-condition definition
+     */
+    static ConditionSnapshot of(String type, ParameterCondition condition) {
+        return new ConditionSnapshot(type, ConditionExpression.of(Collections.singletonList(condition), "AND"));
+    }
+
+    /**
+     * @param values The values of other parameters
+     * @return true if the rule holds, looked up in the cache when possible
+     */
+    boolean isVisible(ControlValues values) {
+        if (values instanceof EvaluationValues) {
+            return cache.isVisible(values, evaluator);
+        }
+        EvaluationValues evaluation = EvaluationValues.acquire(values);
+        try {
+            return cache.isVisible(evaluation, evaluator);
+        } finally {
+            evaluation.release();
+        }
+    }
+
+    ConditionExpression getExpression() {
+        return expression;
+    }
+
+    /**
+     * @return the conditions at the leaves of the rule, in evaluation order; the list cannot be modified
+     */
+    List<ParameterCondition> getConditions() {
+        return expression.getConditions();
+    }
+
+    VisibilityCache getCache() {
+        return cache;
+    }
+}
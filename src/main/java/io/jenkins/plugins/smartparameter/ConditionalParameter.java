@@ -0,0 +1,183 @@
+package io.jenkins.plugins.smartparameter;
+
+import hudson.model.ParameterDefinition;
+import org.kohsuke.stapler.Stapler;
+import org.kohsuke.stapler.StaplerRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Common view of the parameter definitions whose visibility is controlled by conditions.
+ */
+public interface ConditionalParameter {
+
+    String getName();
+
+    /**
+     * Evaluate if this parameter should be visible.
+     * @param values The values of other parameters
+     * @return true if the parameter should be visible
+     */
+    boolean isVisible(ControlValues values);
+
+    /**
+     * Evaluate if this parameter should be visible.
+     * @param request The request containing other parameter values
+     * @return true if the parameter should be visible
+     */
+    default boolean isVisible(StaplerRequest request) {
+        return isVisible(ControlValues.of(request));
+    }
+
+    /**
+     * @return the cache of this parameter's visibility decisions, or null if they are not cached
+     */
+    default VisibilityCache getVisibilityCache() {
+        return null;
+    }
+
+    /**
+     * @return the conditions controlling visibility, in configured order
+     */
+    List<ParameterCondition> getVisibilityConditions();
+
+    /**
+     * @return the compiled combination of the conditions, or null for single-condition parameters
+     */
+    default ConditionExpression getConditionExpression() {
+        return null;
+    }
+
+    /**
+     * @return "AND" or "OR"; single-condition parameters always use "AND"
+     */
+    default String getLogicalOperator() {
+        return "AND";
+    }
+
+    /**
+     * @return the names of other parameters whose visibility follows this one
+     */
+    default List<String> getReferencedParameters() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return the parameter rendered inside this one, or null if there is none
+     */
+    default ParameterDefinition getWrappedParameter() {
+        return null;
+    }
+
+    /**
+     * @return the names of the parameters hidden together with this one: the referenced and wrapped
+     *         parameters of a wrapper, or the parameter's own name otherwise
+     */
+    default Set<String> getControlledParameters() {
+        Set<String> names = new LinkedHashSet<>(getReferencedParameters());
+        ParameterDefinition wrapped = getWrappedParameter();
+        if (wrapped != null) {
+            names.add(wrapped.getName());
+        }
+        if (names.isEmpty()) {
+            names.add(getName());
+        }
+        return names;
+    }
+
+    /**
+     * @return the names of the parameters this one's conditions read
+     */
+    default Set<String> getControlParameterNames() {
+        Set<String> names = new LinkedHashSet<>();
+        List<ParameterCondition> conditions = getVisibilityConditions();
+        if (conditions != null) {
+            for (ParameterCondition condition : conditions) {
+                if (condition.getControlParameter() != null) {
+                    names.add(condition.getControlParameter());
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @return true if a {@link HiddenParameterValue} is recorded instead of the value
+     *         when this parameter is hidden on the submitted build form
+     */
+    default boolean isOmitWhenHidden() {
+        return false;
+    }
+
+    /**
+     * @return true if the client re-evaluates this parameter while its control parameters are being
+     *         typed in, once typing pauses, rather than only when they lose focus
+     */
+    default boolean isLiveUpdate() {
+        return false;
+    }
+
+    /**
+     * @return the type name used by the client script for this parameter
+     */
+    String getManifestType();
+
+    /**
+     * Renders the visibility manifest for the build form this parameter belongs to.
+     * Only the first parameter rendered in a request gets a manifest.
+     * @return the manifest as JSON, or null if it has already been rendered
+     */
+    default String getVisibilityManifest() {
+        return VisibilityManifest.renderOnce(Stapler.getCurrentRequest(), this);
+    }
+
+    /**
+     * Checks whether this parameter starts out visible on the build form being rendered,
+     * based on default values and values passed in the query string.
+     * @return false if the rows of this parameter should be rendered hidden
+     */
+    default boolean isInitiallyVisible() {
+        return VisibilityManifest.isInitiallyVisible(Stapler.getCurrentRequest(), this);
+    }
+
+    /**
+     * @return true if the wrapped parameter is rendered only once it is first shown
+     */
+    default boolean isLazyRendering() {
+        return false;
+    }
+
+    /**
+     * Gives the URL the client loads the wrapped parameter from when it is first shown.
+     * @return the URL, or null if the wrapped parameter is rendered with the build form
+     */
+    default String getFragmentUrl() {
+        if (!isLazyRendering() || getWrappedParameter() == null) {
+            return null;
+        }
+        return SmartParametersAction.getFragmentUrl(Stapler.getCurrentRequest(), getName());
+    }
+
+    /**
+     * Splits comma-separated parameter names, skipping blanks and duplicates.
+     */
+    static List<String> splitNames(String... lists) {
+        List<String> names = new ArrayList<>();
+        for (String list : lists) {
+            if (list == null) {
+                continue;
+            }
+            for (String name : list.split(",")) {
+                String trimmed = name.trim();
+                if (!trimmed.isEmpty() && !names.contains(trimmed)) {
+                    names.add(trimmed);
+                }
+            }
+        }
+        return names;
+    }
+}
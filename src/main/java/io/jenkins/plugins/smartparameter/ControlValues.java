@@ -0,0 +1,44 @@
+package io.jenkins.plugins.smartparameter;
+
+import org.kohsuke.stapler.StaplerRequest;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Source of control parameter values that conditions are evaluated against.
+ */
+@FunctionalInterface
+public interface ControlValues {
+
+    /**
+     * @param name The name of the control parameter
+     * @return all values of the parameter, or null if it has no value
+     */
+    String[] get(String name);
+
+    /**
+     * @param name The name of the control parameter
+     * @return the distinct values of the parameter, or null if it has no value
+     */
+    default Set<String> distinct(String name) {
+        String[] values = get(name);
+        return values == null ? null : new LinkedHashSet<>(Arrays.asList(values));
+    }
+
+    /**
+     * @return the values submitted with the request
+     */
+    static ControlValues of(StaplerRequest request) {
+        return request::getParameterValues;
+    }
+
+    /**
+     * @return the values held by the map
+     */
+    static ControlValues of(Map<String, String[]> values) {
+        return values::get;
+    }
+}
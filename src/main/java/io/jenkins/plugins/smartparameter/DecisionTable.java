@@ -0,0 +1,136 @@
+package io.jenkins.plugins.smartparameter;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Visibility of a multiple-condition parameter for every combination of its control values, precomputed when
+ * all of its control parameters are choices. Each control parameter contributes one digit of a mixed-radix
+ * index: the position of its value among the choices, or one past the last choice when it has no value.
+ * Looking up visibility is then an array index instead of evaluating conditions.
+ */
+final class DecisionTable {
+
+    /** Largest number of combinations precomputed for one parameter; larger products are evaluated as usual. */
+    static final int MAX_CELLS = Integer.getInteger(DecisionTable.class.getName() + ".maxCells", 4096);
+
+    private final String[] parameters;
+    private final List<List<String>> domains;
+    private final List<Map<String, Integer>> positions;
+    private final BitSet visible;
+
+    private DecisionTable(String[] parameters, List<List<String>> domains) {
+        this.parameters = parameters;
+        this.domains = domains;
+        this.positions = new ArrayList<>(domains.size());
+        for (List<String> domain : domains) {
+            Map<String, Integer> position = new HashMap<>();
+            for (int i = 0; i < domain.size(); i++) {
+                position.putIfAbsent(domain.get(i), i);
+            }
+            positions.add(position);
+        }
+        this.visible = new BitSet();
+    }
+
+    /**
+     * Precomputes the table of a parameter, if all of its control parameters have a finite domain.
+     * @param parameter The parameter
+     * @param finiteDomains The choices of the job's choice parameters by name
+     * @return the table, or null if the parameter has no expression, reads a parameter without a finite domain,
+     *         or has more than {@link #MAX_CELLS} combinations
+     */
+    static DecisionTable build(ConditionalParameter parameter, Map<String, List<String>> finiteDomains) {
+        ConditionExpression expression = parameter.getConditionExpression();
+        String[] names = parameter.getControlParameterNames().toArray(new String[0]);
+        if (expression == null || names.length == 0) {
+            return null;
+        }
+
+        List<List<String>> domains = new ArrayList<>(names.length);
+        long cells = 1;
+        for (String name : names) {
+            List<String> domain = finiteDomains.get(name);
+            if (domain == null) {
+                return null;
+            }
+            domains.add(domain);
+            cells *= domain.size() + 1;
+            if (cells > MAX_CELLS) {
+                return null;
+            }
+        }
+
+        DecisionTable table = new DecisionTable(names, domains);
+        Map<String, String[]> values = new HashMap<>();
+        for (int index = 0; index < cells; index++) {
+            // Decode the index into one value per control parameter, the last parameter varying fastest
+            int rest = index;
+            for (int i = names.length - 1; i >= 0; i--) {
+                List<String> domain = domains.get(i);
+                int position = rest % (domain.size() + 1);
+                rest /= domain.size() + 1;
+                values.put(names[i], position < domain.size() ? new String[] {domain.get(position)} : null);
+            }
+            // Every combination is evaluated once, so they must not count as observations of real builds
+            if (expression.evaluateUnmeasured(values::get)) {
+                table.visible.set(index);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * @param values The values of other parameters
+     * @return the precomputed visibility, or null if a control value is not one of the choices
+     *         or a control parameter has several values
+     */
+    Boolean lookup(ControlValues values) {
+        int index = 0;
+        for (int i = 0; i < parameters.length; i++) {
+            String[] current = values.get(parameters[i]);
+            int position;
+            if (current == null || current.length == 0) {
+                position = domains.get(i).size();
+            } else if (current.length > 1) {
+                return null; // Several selected choices are matched condition by condition
+            } else {
+                Integer found = positions.get(i).get(current[0]);
+                if (found == null) {
+                    return null;
+                }
+                position = found;
+            }
+            index = index * (domains.get(i).size() + 1) + position;
+        }
+        SmartParameterMetrics.increment(SmartParameterMetrics.DECISION_TABLE_LOOKUPS);
+        return visible.get(index);
+    }
+
+    /**
+     * @return the table for the client: {@code {"params": [...], "domains": [[...], ...], "visible": "0110..."}}
+     *         with one digit per combination, in index order
+     */
+    JSONObject toJson() {
+        int cells = 1;
+        for (List<String> domain : domains) {
+            cells *= domain.size() + 1;
+        }
+        StringBuilder bits = new StringBuilder(cells);
+        for (int index = 0; index < cells; index++) {
+            bits.append(visible.get(index) ? '1' : '0');
+        }
+
+        JSONObject json = new JSONObject();
+        json.put("params", JSONArray.fromObject(parameters));
+        json.put("domains", JSONArray.fromObject(domains));
+        json.put("visible", bits.toString());
+        return json;
+    }
+}
@@ -0,0 +1,327 @@
+package io.jenkins.plugins.smartparameter;
+
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.listeners.ItemListener;
+import hudson.util.FormValidation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Dependencies between the conditional parameters of a job.
+ * A parameter depends on every parameter that controls the visibility of one of its control parameters,
+ * so that a condition reading a hidden parameter sees no value, the same as an unsubmitted one.
+ * Parameters are evaluated in topological order; those caught in a cycle are evaluated last, in configured order.
+ */
+final class DependencyGraph {
+
+    private static final Logger LOGGER = Logger.getLogger(DependencyGraph.class.getName());
+
+    /**
+     * Graphs by the parameters property they were built from. Saving the job configuration replaces
+     * the property, so a stale graph is never returned and is dropped once the old property is collected.
+     */
+    private static final Map<ParametersDefinitionProperty, DependencyGraph> CACHE =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final List<ConditionalParameter> order;
+    private final List<ConditionalParameter> cyclic;
+    private final Map<ConditionalParameter, DecisionTable> tables;
+    private final Set<String> controlParameterNames;
+
+    private DependencyGraph(List<ConditionalParameter> order, List<ConditionalParameter> cyclic,
+                            Map<ConditionalParameter, DecisionTable> tables) {
+        this.order = Collections.unmodifiableList(order);
+        this.cyclic = Collections.unmodifiableList(cyclic);
+        this.tables = tables;
+        Set<String> names = new HashSet<>();
+        for (ConditionalParameter parameter : order) {
+            names.addAll(parameter.getControlParameterNames());
+        }
+        for (ConditionalParameter parameter : cyclic) {
+            names.addAll(parameter.getControlParameterNames());
+        }
+        this.controlParameterNames = Collections.unmodifiableSet(names);
+    }
+
+    /**
+     * @return the cached graph of the job's current parameter definitions
+     */
+    static DependencyGraph forJob(Job<?, ?> job) {
+        ParametersDefinitionProperty property = job.getProperty(ParametersDefinitionProperty.class);
+        if (property == null) {
+            return of(Collections.emptyList());
+        }
+        return CACHE.computeIfAbsent(property,
+                p -> of(VisibilityEvaluator.forJob(job), VisibilityEvaluator.finiteDomains(job)));
+    }
+
+    /**
+     * Builds the graph and its evaluation order.
+     * @param parameters The conditional parameters, in configured order
+     */
+    static DependencyGraph of(List<ConditionalParameter> parameters) {
+        return of(parameters, Collections.emptyMap());
+    }
+
+    /**
+     * Builds the graph and its evaluation order, and precomputes the decision table of every parameter
+     * that only reads parameters with a finite domain.
+     * @param parameters The conditional parameters, in configured order
+     * @param finiteDomains The choices of the job's choice parameters by name
+     */
+    static DependencyGraph of(List<ConditionalParameter> parameters, Map<String, List<String>> finiteDomains) {
+        Map<String, List<ConditionalParameter>> controllers = controllersByName(parameters);
+
+        // Kahn's algorithm, taking ready parameters in configured order
+        Map<ConditionalParameter, Set<ConditionalParameter>> dependents = new HashMap<>();
+        Map<ConditionalParameter, Integer> pending = new LinkedHashMap<>();
+        for (ConditionalParameter parameter : parameters) {
+            Set<ConditionalParameter> prerequisites = new HashSet<>();
+            for (String controlParameter : parameter.getControlParameterNames()) {
+                prerequisites.addAll(controllers.getOrDefault(controlParameter, Collections.emptyList()));
+            }
+            for (ConditionalParameter prerequisite : prerequisites) {
+                dependents.computeIfAbsent(prerequisite, p -> new LinkedHashSet<>()).add(parameter);
+            }
+            pending.put(parameter, prerequisites.size());
+        }
+
+        List<ConditionalParameter> order = new ArrayList<>(parameters.size());
+        Deque<ConditionalParameter> ready = new ArrayDeque<>();
+        for (Map.Entry<ConditionalParameter, Integer> entry : pending.entrySet()) {
+            if (entry.getValue() == 0) {
+                ready.add(entry.getKey());
+            }
+        }
+        while (!ready.isEmpty()) {
+            ConditionalParameter parameter = ready.poll();
+            order.add(parameter);
+            for (ConditionalParameter dependent : dependents.getOrDefault(parameter, Collections.emptySet())) {
+                if (pending.merge(dependent, -1, Integer::sum) == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+
+        List<ConditionalParameter> cyclic = new ArrayList<>();
+        for (ConditionalParameter parameter : parameters) {
+            if (pending.get(parameter) > 0) {
+                cyclic.add(parameter);
+            }
+        }
+        Map<ConditionalParameter, DecisionTable> tables = new IdentityHashMap<>();
+        if (!finiteDomains.isEmpty()) {
+            for (ConditionalParameter parameter : parameters) {
+                DecisionTable table = DecisionTable.build(parameter, finiteDomains);
+                if (table != null) {
+                    tables.put(parameter, table);
+                }
+            }
+        }
+        return new DependencyGraph(order, cyclic, tables);
+    }
+
+    private static Map<String, List<ConditionalParameter>> controllersByName(Collection<ConditionalParameter> parameters) {
+        Map<String, List<ConditionalParameter>> controllers = new HashMap<>();
+        for (ConditionalParameter parameter : parameters) {
+            for (String controlled : parameter.getControlledParameters()) {
+                controllers.computeIfAbsent(controlled, n -> new ArrayList<>()).add(parameter);
+            }
+        }
+        return controllers;
+    }
+
+    /**
+     * @return all parameters in evaluation order: topologically sorted, then those caught in cycles
+     */
+    List<ConditionalParameter> getEvaluationOrder() {
+        if (cyclic.isEmpty()) {
+            return order;
+        }
+        List<ConditionalParameter> all = new ArrayList<>(order);
+        all.addAll(cyclic);
+        return all;
+    }
+
+    /**
+     * @return the names of all parameters that conditions read
+     */
+    Set<String> getControlParameterNames() {
+        return controlParameterNames;
+    }
+
+    /**
+     * @return the parameters that are part of, or depend on, a dependency cycle
+     */
+    List<ConditionalParameter> getCyclicParameters() {
+        return cyclic;
+    }
+
+    /**
+     * @return the precomputed decision table of the parameter, or null if it is evaluated condition by condition
+     */
+    DecisionTable getDecisionTable(ConditionalParameter parameter) {
+        return tables.get(parameter);
+    }
+
+    /**
+     * Evaluates every parameter in one ordered pass. Once a parameter is hidden, the parameters
+     * it controls read as having no value for the conditions evaluated after it.
+     * @param values The values of all parameters
+     * @return the visibility of each conditional parameter by name, in evaluation order
+     */
+    Map<String, Boolean> evaluate(ControlValues values) {
+        Map<String, Boolean> visibility = new LinkedHashMap<>((order.size() + cyclic.size()) * 4 / 3 + 1);
+        EvaluationValues visibleValues = EvaluationValues.acquire(values);
+        try {
+            evaluate(order, visibleValues, visibility);
+            evaluate(cyclic, visibleValues, visibility);
+        } finally {
+            visibleValues.release();
+        }
+        return visibility;
+    }
+
+    private void evaluate(List<ConditionalParameter> parameters, EvaluationValues visibleValues,
+                          Map<String, Boolean> visibility) {
+        for (ConditionalParameter parameter : parameters) {
+            DecisionTable table = tables.get(parameter);
+            Boolean decided = table == null ? null : table.lookup(visibleValues);
+            boolean visible = decided != null ? decided : parameter.isVisible(visibleValues);
+            visibility.put(parameter.getName(), visible);
+            if (!visible) {
+                visibleValues.hide(parameter.getControlledParameters());
+            }
+        }
+    }
+
+    /**
+     * Validates that a parameter reading the given control parameter does not close a dependency cycle
+     * with the job's saved parameters.
+     * @param job The job being configured, may be null
+     * @param parameterName The name of the parameter being configured
+     * @param controlParameter The control parameter it reads
+     */
+    static FormValidation checkForCycle(Job<?, ?> job, String parameterName, String controlParameter) {
+        return checkForCycle(job, parameterName, null, null, controlParameter);
+    }
+
+    /**
+     * Validates that a wrapper reading the given control parameter does not close a dependency cycle
+     * with the job's saved parameters. A wrapper hides its wrapped and referenced parameters, so reading
+     * any of them closes a cycle too.
+     * @param job The job being configured, may be null
+     * @param parameterName The name of the wrapper being configured
+     * @param refParameter The comma-separated names of the parameters it references, may be null
+     * @param wrappedName The name of the parameter it wraps, may be null
+     * @param controlParameter The control parameter it reads
+     */
+    static FormValidation checkForCycle(Job<?, ?> job, String parameterName, String refParameter,
+                                        String wrappedName, String controlParameter) {
+        if (job == null || parameterName == null || controlParameter == null || controlParameter.isEmpty()
+                || !job.hasPermission(Item.CONFIGURE)) {
+            return FormValidation.ok();
+        }
+
+        List<ConditionalParameter> others = new ArrayList<>();
+        for (ConditionalParameter parameter : VisibilityEvaluator.forJob(job)) {
+            if (!parameterName.equals(parameter.getName())) {
+                others.add(parameter);
+            }
+        }
+
+        List<String> controlled = ConditionalParameter.splitNames(parameterName, refParameter, wrappedName);
+        List<String> cycle = findCycle(others, controlled, controlParameter.trim());
+        if (cycle == null) {
+            return FormValidation.ok();
+        }
+        return FormValidation.error("Circular dependency: " + String.join(" -> ", cycle));
+    }
+
+    /**
+     * Finds the dependency cycle a parameter would close if it read the given control parameter.
+     * @param parameters The other conditional parameters of the job
+     * @param controlled The names hidden together with the parameter being checked
+     * @param controlParameter The control parameter it would read
+     * @return the names along the cycle, starting and ending with a controlled name, or null if there is none
+     */
+    static List<String> findCycle(Collection<ConditionalParameter> parameters, Collection<String> controlled,
+                                  String controlParameter) {
+        if (controlled.contains(controlParameter)) {
+            return List.of(controlParameter, controlParameter);
+        }
+
+        // Each name depends on the control parameters of whatever controls it
+        Map<String, Set<String>> dependsOn = new HashMap<>();
+        for (ConditionalParameter parameter : parameters) {
+            for (String name : parameter.getControlledParameters()) {
+                dependsOn.computeIfAbsent(name, n -> new LinkedHashSet<>()).addAll(parameter.getControlParameterNames());
+            }
+        }
+
+        Map<String, String> reachedFrom = new HashMap<>();
+        Deque<String> queue = new ArrayDeque<>();
+        queue.add(controlParameter);
+        reachedFrom.put(controlParameter, null);
+        while (!queue.isEmpty()) {
+            String name = queue.poll();
+            for (String next : dependsOn.getOrDefault(name, Collections.emptySet())) {
+                if (reachedFrom.containsKey(next)) {
+                    continue;
+                }
+                reachedFrom.put(next, name);
+                if (controlled.contains(next)) {
+                    List<String> cycle = new ArrayList<>();
+                    for (String step = next; step != null; step = reachedFrom.get(step)) {
+                        cycle.add(0, step);
+                    }
+                    cycle.add(0, next);
+                    return cycle;
+                }
+                queue.add(next);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Builds the graph when a job configuration is saved, so the first build form does not pay for it,
+     * and reports configurations that contain cycles.
+     */
+    @Extension
+    public static class SaveListener extends ItemListener {
+        @Override
+        public void onUpdated(Item item) {
+            if (!(item instanceof Job)) {
+                return;
+            }
+            DependencyGraph graph = forJob((Job<?, ?>) item);
+            if (!graph.getCyclicParameters().isEmpty()) {
+                List<String> names = new ArrayList<>();
+                for (ConditionalParameter parameter : graph.getCyclicParameters()) {
+                    names.add(parameter.getName());
+                }
+                LOGGER.log(Level.WARNING, "Smart parameters of {0} have circular dependencies: {1}",
+                        new Object[] {item.getFullName(), names});
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package io.jenkins.plugins.smartparameter;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Control values for the duration of one evaluation. A multi-valued control parameter, such as a multi-select,
+ * is turned into a set of distinct values once, however many conditions read it. Parameters can be hidden
+ * part-way through an evaluation, after which they read as having no value.
+ * Instances are not thread-safe and must not outlive the evaluation they were created for. Each thread reuses
+ * one instance, and its collections, for the evaluations it runs one after another.
+ */
+final class EvaluationValues implements ControlValues {
+
+    private static final ThreadLocal<EvaluationValues> REUSABLE = ThreadLocal.withInitial(EvaluationValues::new);
+
+    private ControlValues source;
+    private boolean inUse;
+    private final Map<String, Set<String>> sets = new HashMap<>();
+    private final Set<String> hidden = new HashSet<>();
+
+    private EvaluationValues() {
+    }
+
+    /**
+     * Starts an evaluation on the calling thread, reusing its instance unless an evaluation is already running.
+     * The returned values must be passed to {@link #release()} once the evaluation is over.
+     */
+    static EvaluationValues acquire(ControlValues source) {
+        EvaluationValues values = REUSABLE.get();
+        if (values.inUse) {
+            values = new EvaluationValues();
+        }
+        values.source = source;
+        values.inUse = true;
+        return values;
+    }
+
+    /**
+     * Ends the evaluation, keeping the instance and its collections for the next one on this thread.
+     */
+    void release() {
+        source = null;
+        sets.clear();
+        hidden.clear();
+        inUse = false;
+    }
+
+    @Override
+    public String[] get(String name) {
+        return isHidden(name) ? null : source.get(name);
+    }
+
+    @Override
+    public Set<String> distinct(String name) {
+        if (isHidden(name)) {
+            return null;
+        }
+        if (sets.containsKey(name)) {
+            return sets.get(name);
+        }
+        Set<String> values = source.distinct(name);
+        values = values == null ? null : Collections.unmodifiableSet(values);
+        sets.put(name, values);
+        return values;
+    }
+
+    /**
+     * Makes the given parameters read as having no value for the rest of the evaluation.
+     */
+    void hide(Collection<String> names) {
+        hidden.addAll(names);
+    }
+
+    private boolean isHidden(String name) {
+        return !hidden.isEmpty() && hidden.contains(name);
+    }
+}
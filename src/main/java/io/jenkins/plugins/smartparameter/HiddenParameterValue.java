@@ -0,0 +1,51 @@
+package io.jenkins.plugins.smartparameter;
+
+import hudson.model.ParameterValue;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Placeholder recorded instead of the value of a parameter that was hidden when the build was submitted.
+ * It carries only the parameter name and contributes nothing to the build environment.
+ * One instance is shared per parameter name, also across builds loaded from disk.
+ */
+public final class HiddenParameterValue extends ParameterValue {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Map<String, HiddenParameterValue> INSTANCES = new ConcurrentHashMap<>();
+
+    private HiddenParameterValue(String name) {
+        super(name);
+    }
+
+    /**
+     * @return the shared placeholder for the given parameter name
+     */
+    static HiddenParameterValue of(String name) {
+        return INSTANCES.computeIfAbsent(name, HiddenParameterValue::new);
+    }
+
+    /**
+     * Replaces deserialized copies with the shared instance.
+     */
+    protected Object readResolve() {
+        return of(getName());
+    }
+
+    @Override
+    public Object getValue() {
+        return null;
+    }
+
+    @Override
+    public String getShortDescription() {
+        return getName() + " (hidden)";
+    }
+
+    @Override
+    public String toString() {
+        return "(HiddenParameterValue) " + getName();
+    }
+}
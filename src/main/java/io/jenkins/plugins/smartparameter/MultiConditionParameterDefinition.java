@@ -5,9 +5,11 @@ import hudson.model.ParameterDefinition;
 import hudson.model.ParameterValue;
 import hudson.model.SimpleParameterDefinition;
 import hudson.model.StringParameterValue;
+import hudson.util.FormValidation;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 import net.sf.json.JSONObject;
 
@@ -18,17 +20,23 @@ import java.util.List;
 /**
  * Advanced smart parameter with support for multiple conditions.
  */
-public class MultiConditionParameterDefinition extends SimpleParameterDefinition {
+public class MultiConditionParameterDefinition extends SimpleParameterDefinition implements ConditionalParameter {
 
     private final String defaultValue;
     private List<ParameterCondition> conditions = new ArrayList<>();
     private String logicalOperator = "AND"; // Default is AND
+    private String expression;
+    /** The compiled rule, replaced as a whole by the setters that change it; never compiled on the read path. */
+    private transient volatile ConditionSnapshot snapshot;
     private ParameterDefinition parameterDefinition;
+    private boolean omitWhenHidden;
+    private boolean liveUpdate;
 
     @DataBoundConstructor
     public MultiConditionParameterDefinition(String name, String description, String defaultValue) {
         super(name, description);
         this.defaultValue = defaultValue;
+        this.snapshot = compileSnapshot();
     }
 
     public String getDefaultValue() {
@@ -41,9 +49,11 @@ public class MultiConditionParameterDefinition extends SimpleParameterDefinition
 
     @DataBoundSetter
     public void setConditions(List<ParameterCondition> conditions) {
-        this.conditions = conditions;
+        this.conditions = ConditionPool.intern(conditions);
+        this.snapshot = compileSnapshot();
     }
 
+    @Override
     public String getLogicalOperator() {
         return logicalOperator;
     }
@@ -51,6 +61,27 @@ public class MultiConditionParameterDefinition extends SimpleParameterDefinition
     @DataBoundSetter
     public void setLogicalOperator(String logicalOperator) {
         this.logicalOperator = logicalOperator;
+        this.snapshot = compileSnapshot();
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * Sets a boolean expression over conditions, e.g.
+     * {@code (ENV == prod AND REGION startsWith eu) OR OVERRIDE == true}.
+     * When set, it replaces the list of conditions and the logical operator.
+     */
+    @DataBoundSetter
+    public void setExpression(String expression) {
+        this.expression = expression;
+        this.snapshot = compileSnapshot();
+    }
+
+    @Override
+    public ConditionExpression getConditionExpression() {
+        return snapshot.getExpression();
     }
 
     public ParameterDefinition getParameterDefinition() {
@@ -62,87 +93,87 @@ public class MultiConditionParameterDefinition extends SimpleParameterDefinition
         this.parameterDefinition = parameterDefinition;
     }
 
+    @Override
+    public boolean isOmitWhenHidden() {
+        return omitWhenHidden;
+    }
+
+    @DataBoundSetter
+    public void setOmitWhenHidden(boolean omitWhenHidden) {
+        this.omitWhenHidden = omitWhenHidden;
+    }
+
+    @Override
+    public boolean isLiveUpdate() {
+        return liveUpdate;
+    }
+
+    @DataBoundSetter
+    public void setLiveUpdate(boolean liveUpdate) {
+        this.liveUpdate = liveUpdate;
+    }
+
     /**
      * Evaluate if this parameter should be visible based on all conditions.
-     * @param request The request containing other parameter values
+     * @param values The values of other parameters
      * @return true if the parameter should be visible
      */
-    public boolean isVisible(StaplerRequest request) {
-        if (conditions.isEmpty()) {
-            return true; // If no conditions are set, always show
-        }
-
-        boolean result = "AND".equals(logicalOperator); // Start with true for AND, false for OR
-
-        for (ParameterCondition condition : conditions) {
-            boolean conditionResult = evaluateCondition(condition, request);
-
-            if ("AND".equals(logicalOperator)) {
-                result = result && conditionResult;
-                // Short-circuit for AND - if any condition is false, result is false
-                if (!result) {
-                    return false;
-                }
-            } else {
-                result = result || conditionResult;
-                // Short-circuit for OR - if any condition is true, result is true
-                if (result) {
-                    return true;
-                }
-            }
-        }
+    @Override
+    public boolean isVisible(ControlValues values) {
+        return snapshot.isVisible(values);
+    }
 
-        return result;
+    @Override
+    public VisibilityCache getVisibilityCache() {
+        return snapshot.getCache();
     }
 
-    private boolean evaluateCondition(ParameterCondition condition, StaplerRequest request) {
-        String controlParameter = condition.getControlParameter();
-        String conditionType = condition.getCondition();
-        String controlValue = condition.getControlValue();
+    @Override
+    public String getManifestType() {
+        return "multiCondition";
+    }
 
-        if (controlParameter == null || conditionType == null || controlValue == null) {
-            return true; // If condition is not fully defined, do not restrict visibility
-        }
+    @Override
+    public List<ParameterCondition> getVisibilityConditions() {
+        return snapshot.getConditions();
+    }
 
-        String[] values = request.getParameterValues(controlParameter);
-        if (values == null || values.length == 0) {
-            return false; // No value found for control parameter
-        }
+    private ConditionSnapshot compileSnapshot() {
+        return new ConditionSnapshot(getManifestType(),
+                ConditionExpression.compile(expression, conditions, logicalOperator));
+    }
 
-        String value = values[0];
-
-        switch (conditionType) {
-            case "equals":
-                return controlValue.equals(value);
-            case "notEquals":
-                return !controlValue.equals(value);
-            case "contains":
-                return value.contains(controlValue);
-            case "startsWith":
-                return value.startsWith(controlValue);
-            case "endsWith":
-                return value.endsWith(controlValue);
-            case "regex":
-                return value.matches(controlValue);
-            default:
-                return true;
-        }
+    /**
+     * Recompiles the conditions after the parameter has been loaded from disk.
+     */
+    protected Object readResolve() {
+        // Conditions are pooled as they are loaded; operators are one of a few strings
+        logicalOperator = logicalOperator == null ? null : logicalOperator.intern();
+        snapshot = compileSnapshot();
+        return this;
     }
 
     @Override
     public ParameterValue createValue(StaplerRequest req, JSONObject jo) {
-        if (parameterDefinition != null) {
-            return parameterDefinition.createValue(req, jo);
-        }
-        return new StringParameterValue(getName(), defaultValue, getDescription());
+        return SmartParameterMetrics.time("createValue.multiCondition", () -> {
+            if (omitWhenHidden && VisibilityEvaluator.isHiddenOnSubmit(req, this)) {
+                return HiddenParameterValue.of(parameterDefinition != null ? parameterDefinition.getName() : getName());
+            }
+            if (parameterDefinition != null) {
+                return parameterDefinition.createValue(req, jo);
+            }
+            return new StringParameterValue(getName(), defaultValue, getDescription());
+        });
     }
 
     @Override
     public ParameterValue createValue(String value) {
-        if (parameterDefinition != null && parameterDefinition instanceof SimpleParameterDefinition) {
-            return ((SimpleParameterDefinition) parameterDefinition).createValue(value);
-        }
-        return new StringParameterValue(getName(), value, getDescription());
+        return SmartParameterMetrics.time("createValue.multiCondition", () -> {
+            if (parameterDefinition != null && parameterDefinition instanceof SimpleParameterDefinition) {
+                return ((SimpleParameterDefinition) parameterDefinition).createValue(value);
+            }
+            return new StringParameterValue(getName(), value, getDescription());
+        });
     }
 
     @Extension
@@ -154,6 +185,13 @@ public class MultiConditionParameterDefinition extends SimpleParameterDefinition
             return "Smart Parameter (Multiple Conditions)";
         }
 
+        /**
+         * Validates the syntax of the expression.
+         */
+        public FormValidation doCheckExpression(@QueryParameter String expression) {
+            return SmartParameterMetrics.time("validate.expression", () -> ConditionExpression.validate(expression));
+        }
+
         public hudson.util.ListBoxModel doFillLogicalOperatorItems() {
             hudson.util.ListBoxModel items = new hudson.util.ListBoxModel();
             items.add("AND", "AND");
@@ -3,10 +3,12 @@ package io.jenkins.plugins.smartparameter;
 import hudson.Extension;
 import hudson.model.ParameterDefinition;
 import hudson.model.ParameterValue;
+import hudson.util.FormValidation;
 
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 import net.sf.json.JSONObject;
 
@@ -17,18 +19,26 @@ import java.util.List;
 /**
  * Advanced smart parameter with support for multiple conditions.
  */
-public class MultiConditionWrapperDefinition extends ParameterDefinition {
+public class MultiConditionWrapperDefinition extends ParameterDefinition implements ConditionalParameter {
 
     private ParameterDefinition wrappedParameter;
     private String refParameter;
     private List<ParameterCondition> conditions = new ArrayList<>();
     private String logicalOperator = "AND"; // Default is AND
+    private String expression;
+    /** The compiled rule, replaced as a whole by the setters that change it; never compiled on the read path. */
+    private transient volatile ConditionSnapshot snapshot;
+    private boolean omitWhenHidden;
+    private boolean liveUpdate;
+    private boolean lazyRendering;
 
     @DataBoundConstructor
     public MultiConditionWrapperDefinition(String name, String description) {
         super(name, description);
+        this.snapshot = compileSnapshot();
     }
 
+    @Override
     public ParameterDefinition getWrappedParameter() {
         return wrappedParameter;
     }
@@ -47,15 +57,47 @@ public class MultiConditionWrapperDefinition extends ParameterDefinition {
         this.refParameter = refParameter;
     }
 
+    @Override
+    public boolean isOmitWhenHidden() {
+        return omitWhenHidden;
+    }
+
+    @DataBoundSetter
+    public void setOmitWhenHidden(boolean omitWhenHidden) {
+        this.omitWhenHidden = omitWhenHidden;
+    }
+
+    @Override
+    public boolean isLiveUpdate() {
+        return liveUpdate;
+    }
+
+    @DataBoundSetter
+    public void setLiveUpdate(boolean liveUpdate) {
+        this.liveUpdate = liveUpdate;
+    }
+
+    @Override
+    public boolean isLazyRendering() {
+        return lazyRendering;
+    }
+
+    @DataBoundSetter
+    public void setLazyRendering(boolean lazyRendering) {
+        this.lazyRendering = lazyRendering;
+    }
+
     public List<ParameterCondition> getConditions() {
         return conditions;
     }
 
     @DataBoundSetter
     public void setConditions(List<ParameterCondition> conditions) {
-        this.conditions = conditions;
+        this.conditions = ConditionPool.intern(conditions);
+        this.snapshot = compileSnapshot();
     }
 
+    @Override
     public String getLogicalOperator() {
         return logicalOperator;
     }
@@ -63,89 +105,99 @@ public class MultiConditionWrapperDefinition extends ParameterDefinition {
     @DataBoundSetter
     public void setLogicalOperator(String logicalOperator) {
         this.logicalOperator = logicalOperator;
+        this.snapshot = compileSnapshot();
+    }
+
+    public String getExpression() {
+        return expression;
     }
 
     /**
-     * Evaluate if this parameter should be visible based on all conditions.
-     * @param request The request containing other parameter values
-     * @return true if the parameter should be visible
+     * Sets a boolean expression over conditions, e.g.
+     * {@code (ENV == prod AND REGION startsWith eu) OR OVERRIDE == true}.
+     * When set, it replaces the list of conditions and the logical operator.
      */
-    public boolean isVisible(StaplerRequest request) {
-        if (conditions.isEmpty()) {
-            return true; // If no conditions are set, always show
-        }
+    @DataBoundSetter
+    public void setExpression(String expression) {
+        this.expression = expression;
+        this.snapshot = compileSnapshot();
+    }
 
-        boolean result = "AND".equals(logicalOperator); // Start with true for AND, false for OR
+    @Override
+    public ConditionExpression getConditionExpression() {
+        return snapshot.getExpression();
+    }
 
-        for (ParameterCondition condition : conditions) {
-            boolean conditionResult = evaluateCondition(condition, request);
+    /**
+     * Evaluate if this parameter should be visible based on all conditions.
+     * @param values The values of other parameters
+     * @return true if the parameter should be visible
+     */
+    @Override
+    public boolean isVisible(ControlValues values) {
+        return snapshot.isVisible(values);
+    }
 
-            if ("AND".equals(logicalOperator)) {
-                result = result && conditionResult;
-                // Short-circuit for AND - if any condition is false, result is false
-                if (!result) {
-                    return false;
-                }
-            } else {
-                result = result || conditionResult;
-                // Short-circuit for OR - if any condition is true, result is true
-                if (result) {
-                    return true;
-                }
-            }
-        }
+    @Override
+    public VisibilityCache getVisibilityCache() {
+        return snapshot.getCache();
+    }
 
-        return result;
+    @Override
+    public String getManifestType() {
+        return "multiConditionWrapper";
     }
 
-    private boolean evaluateCondition(ParameterCondition condition, StaplerRequest request) {
-        String controlParameter = condition.getControlParameter();
-        String conditionType = condition.getCondition();
-        String controlValue = condition.getControlValue();
+    @Override
+    public List<ParameterCondition> getVisibilityConditions() {
+        return snapshot.getConditions();
+    }
 
-        if (controlParameter == null || conditionType == null || controlValue == null) {
-            return true; // If condition is not fully defined, do not restrict visibility
-        }
+    private ConditionSnapshot compileSnapshot() {
+        return new ConditionSnapshot(getManifestType(),
+                ConditionExpression.compile(expression, conditions, logicalOperator));
+    }
 
-        String[] values = request.getParameterValues(controlParameter);
-        if (values == null || values.length == 0) {
-            return false; // No value found for control parameter
-        }
+    /**
+     * Recompiles the conditions after the parameter has been loaded from disk.
+     */
+    protected Object readResolve() {
+        // Conditions are pooled as they are loaded; operators are one of a few strings
+        logicalOperator = logicalOperator == null ? null : logicalOperator.intern();
+        snapshot = compileSnapshot();
+        return this;
+    }
 
-        String value = values[0];
-
-        switch (conditionType) {
-            case "equals":
-                return controlValue.equals(value);
-            case "notEquals":
-                return !controlValue.equals(value);
-            case "contains":
-                return value.contains(controlValue);
-            case "startsWith":
-                return value.startsWith(controlValue);
-            case "endsWith":
-                return value.endsWith(controlValue);
-            case "regex":
-                return value.matches(controlValue);
-            default:
-                return true;
-        }
+    @Override
+    public List<String> getReferencedParameters() {
+        return ConditionalParameter.splitNames(getName(), refParameter);
     }
 
     @Override
     public ParameterValue createValue(StaplerRequest req, JSONObject jo) {
-        if (wrappedParameter != null) {
-            return wrappedParameter.createValue(req, jo);
-        }
-        return null;
+        return SmartParameterMetrics.time("createValue.multiConditionWrapper", () -> {
+            if (wrappedParameter != null) {
+                if (omitWhenHidden && VisibilityEvaluator.isHiddenOnSubmit(req, this)) {
+                    return HiddenParameterValue.of(wrappedParameter.getName());
+                }
+                if (jo.optBoolean("lazy")) {
+                    // Never shown, so never rendered: the form holds no value for the wrapped parameter
+                    return wrappedParameter.getDefaultParameterValue();
+                }
+                return wrappedParameter.createValue(req, jo);
+            }
+            return null;
+        });
     }
 
     @Override
     public ParameterValue createValue(StaplerRequest req) {
-        if (wrappedParameter != null) {
-            return wrappedParameter.createValue(req);
-        }
-        return null;
+        return SmartParameterMetrics.time("createValue.multiConditionWrapper", () -> {
+            if (wrappedParameter != null) {
+                return wrappedParameter.createValue(req);
+            }
+            return null;
+        });
     }
 
     @Extension
@@ -157,6 +209,13 @@ public class MultiConditionWrapperDefinition extends ParameterDefinition {
             return "Smart Wrapper Parameter (Multiple Conditions)";
         }
 
+        /**
+         * Validates the syntax of the expression.
+         */
+        public FormValidation doCheckExpression(@QueryParameter String expression) {
+            return SmartParameterMetrics.time("validate.expression", () -> ConditionExpression.validate(expression));
+        }
+
         public hudson.util.ListBoxModel doFillLogicalOperatorItems() {
             hudson.util.ListBoxModel items = new hudson.util.ListBoxModel();
             items.add("AND", "AND");
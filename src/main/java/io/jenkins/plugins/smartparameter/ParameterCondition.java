@@ -3,24 +3,50 @@ package io.jenkins.plugins.smartparameter;
 import hudson.Extension;
 import hudson.model.AbstractDescribableImpl;
 import hudson.model.Descriptor;
+import hudson.model.Job;
 import hudson.util.FormValidation;
+import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.RelativePath;
+
+import java.util.Objects;
 
 /**
  * Represents a single condition for parameter visibility.
  */
 public class ParameterCondition extends AbstractDescribableImpl<ParameterCondition> {
 
+    /** Every value of a multi-valued control parameter must meet the condition. */
+    static final String MATCH_ALL = "all";
+
+    /** Any value of a multi-valued control parameter meeting the condition is enough; the default. */
+    static final String MATCH_ANY = "any";
+
     private final String controlParameter;
     private final String condition;
     private final String controlValue;
+    /** {@link #MATCH_ALL}, or null for {@link #MATCH_ANY} so that existing configurations are unchanged. */
+    private final String match;
+    private transient ConditionPredicate predicate;
 
-    @DataBoundConstructor
     public ParameterCondition(String controlParameter, String condition, String controlValue) {
+        this(controlParameter, condition, controlValue, null);
+    }
+
+    @DataBoundConstructor
+    public ParameterCondition(String controlParameter, String condition, String controlValue, String match) {
         this.controlParameter = controlParameter;
         this.condition = condition;
         this.controlValue = controlValue;
+        this.match = MATCH_ALL.equals(match) ? MATCH_ALL : null;
+    }
+
+    /**
+     * Shares one instance between all jobs carrying the same condition.
+     */
+    protected Object readResolve() {
+        return ConditionPool.intern(this);
     }
 
     public String getControlParameter() {
@@ -35,6 +61,47 @@ public class ParameterCondition extends AbstractDescribableImpl<ParameterConditi
         return controlValue;
     }
 
+    /**
+     * @return "all" if every value of a multi-valued control parameter must meet the condition, otherwise "any"
+     */
+    public String getMatch() {
+        return match != null ? match : MATCH_ANY;
+    }
+
+    /**
+     * @return the compiled condition, compiled on first use so that a condition shared by many jobs
+     *         is compiled once
+     */
+    ConditionPredicate getPredicate() {
+        // Predicates are immutable, so threads racing to compile the first one at worst compile it twice
+        ConditionPredicate compiled = predicate;
+        if (compiled == null) {
+            compiled = ConditionPredicate.compile(controlParameter, condition, controlValue, match);
+            predicate = compiled;
+        }
+        return compiled;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ParameterCondition)) {
+            return false;
+        }
+        ParameterCondition other = (ParameterCondition) o;
+        return Objects.equals(controlParameter, other.controlParameter)
+                && Objects.equals(condition, other.condition)
+                && Objects.equals(controlValue, other.controlValue)
+                && Objects.equals(match, other.match);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(controlParameter, condition, controlValue, match);
+    }
+
     @Extension
     public static class DescriptorImpl extends Descriptor<ParameterCondition> {
         @Override
@@ -46,20 +113,25 @@ public class ParameterCondition extends AbstractDescribableImpl<ParameterConditi
          * Validates the entered condition.
          */
         public FormValidation doCheckCondition(@QueryParameter String condition) {
-            if (condition == null || condition.isEmpty()) {
-                return FormValidation.error("Condition must not be empty");
-            }
-
-            if (!condition.equals("equals") &&
-                    !condition.equals("notEquals") &&
-                    !condition.equals("contains") &&
-                    !condition.equals("startsWith") &&
-                    !condition.equals("endsWith") &&
-                    !condition.equals("regex")) {
-                return FormValidation.error("Invalid condition type");
-            }
-
-            return FormValidation.ok();
+            return SmartParameterMetrics.time("validate.condition", () -> {
+                if (condition == null || condition.isEmpty()) {
+                    return FormValidation.error("Condition must not be empty");
+                }
+
+                if (!condition.equals("equals") &&
+                        !condition.equals("notEquals") &&
+                        !condition.equals("contains") &&
+                        !condition.equals("startsWith") &&
+                        !condition.equals("endsWith") &&
+                        !condition.equals("regex") &&
+                        !condition.equals("in") &&
+                        !condition.equals("notIn") &&
+                        !condition.equals("containsAny")) {
+                    return FormValidation.error("Invalid condition type");
+                }
+
+                return FormValidation.ok();
+            });
         }
 
         public hudson.util.ListBoxModel doFillConditionItems() {
@@ -70,37 +142,68 @@ public class ParameterCondition extends AbstractDescribableImpl<ParameterConditi
             items.add("starts with", "startsWith");
             items.add("ends with", "endsWith");
             items.add("matches regex", "regex");
+            items.add("in list", "in");
+            items.add("not in list", "notIn");
+            items.add("contains any of", "containsAny");
+            return items;
+        }
+
+        public hudson.util.ListBoxModel doFillMatchItems() {
+            hudson.util.ListBoxModel items = new hudson.util.ListBoxModel();
+            items.add("any value", MATCH_ANY);
+            items.add("all values", MATCH_ALL);
             return items;
         }
 
         /**
-         * Validates the control parameter name.
+         * Validates the control parameter name and that it does not create a circular dependency
+         * with the parameter owning this condition, or with the parameters it wraps and references.
          */
-        public FormValidation doCheckControlParameter(@QueryParameter String controlParameter) {
-            if (controlParameter == null || controlParameter.isEmpty()) {
-                return FormValidation.error("Control parameter must not be empty");
-            }
-            return FormValidation.ok();
+        public FormValidation doCheckControlParameter(@QueryParameter String controlParameter,
+                                                      @RelativePath("..") @QueryParameter("name") String parameterName,
+                                                      @RelativePath("..") @QueryParameter String refParameter,
+                                                      @RelativePath("../wrappedParameter") @QueryParameter("name")
+                                                      String wrappedName,
+                                                      @AncestorInPath Job<?, ?> job) {
+            return SmartParameterMetrics.time("validate.controlParameter", () -> {
+                if (controlParameter == null || controlParameter.isEmpty()) {
+                    return FormValidation.error("Control parameter must not be empty");
+                }
+                return DependencyGraph.checkForCycle(job, parameterName, refParameter, wrappedName,
+                        controlParameter);
+            });
         }
 
         /**
-         * Validates the regex pattern (when regex condition is used)
+         * Validates the regex pattern (when regex condition is used) and warns about patterns that can backtrack
          */
         public FormValidation doCheckControlValue(@QueryParameter String controlValue,
                                                   @QueryParameter String condition) {
-            if (controlValue == null || controlValue.isEmpty()) {
-                return FormValidation.error("Control value must not be empty");
-            }
-
-            if ("regex".equals(condition)) {
-                try {
-                    java.util.regex.Pattern.compile(controlValue);
-                } catch (java.util.regex.PatternSyntaxException e) {
-                    return FormValidation.error("Invalid regex pattern: " + e.getMessage());
+            return SmartParameterMetrics.time("validate.controlValue", () -> {
+                if (controlValue == null || controlValue.isEmpty()) {
+                    return FormValidation.error("Control value must not be empty");
+                }
+
+                if ("regex".equals(condition)) {
+                    try {
+                        java.util.regex.Pattern.compile(controlValue);
+                    } catch (java.util.regex.PatternSyntaxException e) {
+                        return FormValidation.error("Invalid regex pattern: " + e.getMessage());
+                    }
+
+                    String warning = RegexSupport.backtrackingWarning(controlValue);
+                    if (warning != null) {
+                        return FormValidation.warning(warning);
+                    }
+                }
+
+                if (("in".equals(condition) || "notIn".equals(condition) || "containsAny".equals(condition))
+                        && ConditionPredicate.splitList(controlValue).isEmpty()) {
+                    return FormValidation.error("List must contain at least one value");
                 }
-            }
 
-            return FormValidation.ok();
+                return FormValidation.ok();
+            });
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,255 @@
+package io.jenkins.plugins.smartparameter;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiles and evaluates the patterns of {@code regex} conditions without letting one pattern pin a thread.
+ * <p>
+ * With {@code -Dio.jenkins.plugins.smartparameter.RegexSupport.linear=true}, patterns are matched by RE2/J,
+ * which runs in time linear in the input. Patterns RE2/J cannot express (backreferences, lookaround) and all
+ * patterns when the option is off use {@link java.util.regex}; those that can backtrack catastrophically are
+ * matched within a time budget and count as not matching once it runs out.
+ */
+final class RegexSupport {
+
+    private static final Logger LOGGER = Logger.getLogger(RegexSupport.class.getName());
+
+    /** Whether patterns are matched with the linear-time RE2/J engine when possible. */
+    static final boolean LINEAR = Boolean.getBoolean(RegexSupport.class.getName() + ".linear");
+
+    /** Time allowed for matching one value against a pattern that can backtrack, also used by the client. */
+    static final long BUDGET_MILLIS = Long.getLong(RegexSupport.class.getName() + ".budgetMillis", 50);
+
+    /** Per thread, how many matches have run out of their budget, so callers can tell a cut-off result. */
+    private static final ThreadLocal<int[]> BUDGET_EXCEEDED = ThreadLocal.withInitial(() -> new int[1]);
+
+    private RegexSupport() {
+    }
+
+    /**
+     * Compiles a pattern for full-string matching.
+     * @param regex The pattern as configured
+     * @return a predicate testing whether a value matches the whole pattern
+     * @throws PatternSyntaxException if the pattern is invalid
+     */
+    static Predicate<String> compile(String regex) {
+        SmartParameterMetrics.increment(SmartParameterMetrics.REGEX_COMPILATIONS);
+        Pattern pattern = Pattern.compile(regex);
+
+        if (LINEAR) {
+            try {
+                com.google.re2j.Pattern linear = com.google.re2j.Pattern.compile(regex);
+                return value -> linear.matcher(value).matches();
+            } catch (com.google.re2j.PatternSyntaxException e) {
+                // Needs backtracking, fall through to the budgeted Java engine
+            }
+        }
+
+        if (!canBacktrack(regex)) {
+            return value -> pattern.matcher(value).matches();
+        }
+        return value -> matchWithinBudget(pattern, value);
+    }
+
+    /**
+     * Checks whether a pattern may take more than linear time on the backtracking engine:
+     * it uses backreferences or lookaround, or repeats a group that itself repeats or alternates,
+     * as in {@code (a+)+} or {@code (a|ab)*}.
+     */
+    static boolean canBacktrack(String regex) {
+        return needsBacktracking(regex) || hasNestedRepetition(regex);
+    }
+
+    /**
+     * @return true if the pattern uses constructs only a backtracking engine supports
+     */
+    static boolean needsBacktracking(String regex) {
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                // A backreference, unless the backslash itself is escaped, as in \\1
+                if (++i < regex.length() && isBackreference(regex.charAt(i))) {
+                    return true;
+                }
+            } else if (c == '[') {
+                i = skipCharacterClass(regex, i);
+            } else if (c == '(' && isLookaround(regex, i + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isBackreference(char escaped) {
+        return escaped >= '1' && escaped <= '9' || escaped == 'k';
+    }
+
+    private static boolean isLookaround(String regex, int index) {
+        if (!regex.startsWith("?", index)) {
+            return false;
+        }
+        int next = regex.startsWith("?<", index) ? index + 2 : index + 1;
+        return next < regex.length() && (regex.charAt(next) == '=' || regex.charAt(next) == '!');
+    }
+
+    /**
+     * @return how many matches on the calling thread have run out of their budget so far; a result computed
+     * while this count changed counts a cut-off match as no match and must not be cached
+     */
+    static int budgetExceededCount() {
+        return BUDGET_EXCEEDED.get()[0];
+    }
+
+    /**
+     * Describes why a pattern may be slow to evaluate, for configuration-time validation.
+     * @return the warning, or null if the pattern always runs in linear time
+     */
+    static String backtrackingWarning(String regex) {
+        if (needsBacktracking(regex)) {
+            return "Backreferences and lookaround need a backtracking regex engine; "
+                    + "matching is cut off after " + BUDGET_MILLIS + " ms and then counts as no match";
+        }
+        if (hasNestedRepetition(regex) && !LINEAR) {
+            return "A repeated group that itself repeats or alternates can backtrack catastrophically; "
+                    + "matching is cut off after " + BUDGET_MILLIS + " ms and then counts as no match";
+        }
+        return null;
+    }
+
+    private static boolean hasNestedRepetition(String regex) {
+        // For each open group, whether its body contains a quantifier or an alternation
+        Deque<boolean[]> groups = new ArrayDeque<>();
+        groups.push(new boolean[1]);
+
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            switch (c) {
+                case '\\':
+                    i++; // Skip the escaped character
+                    break;
+                case '[':
+                    i = skipCharacterClass(regex, i);
+                    break;
+                case '(':
+                    groups.push(new boolean[1]);
+                    break;
+                case ')': {
+                    if (groups.size() == 1) {
+                        break; // Unbalanced, the pattern does not compile anyway
+                    }
+                    boolean repeatsInside = groups.pop()[0];
+                    boolean repeated = isRepetition(regex, i + 1);
+                    if (repeatsInside && repeated) {
+                        return true;
+                    }
+                    groups.peek()[0] |= repeatsInside || repeated;
+                    break;
+                }
+                case '|':
+                case '*':
+                case '+':
+                case '{':
+                    groups.peek()[0] = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isRepetition(String regex, int index) {
+        if (index >= regex.length()) {
+            return false;
+        }
+        char c = regex.charAt(index);
+        return c == '*' || c == '+' || c == '{';
+    }
+
+    private static int skipCharacterClass(String regex, int start) {
+        int i = start + 1;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            i++; // A leading ] is a literal
+        }
+        for (; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == ']') {
+                return i;
+            }
+        }
+        return regex.length();
+    }
+
+    private static boolean matchWithinBudget(Pattern pattern, String value) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BUDGET_MILLIS);
+        try {
+            return pattern.matcher(new BudgetedCharSequence(value, deadline)).matches();
+        } catch (BudgetExceededException e) {
+            BUDGET_EXCEEDED.get()[0]++;
+            SmartParameterMetrics.increment(SmartParameterMetrics.REGEX_BUDGET_EXCEEDED);
+            LOGGER.log(Level.FINE, "Regex condition {0} exceeded its {1} ms budget",
+                    new Object[] {pattern.pattern(), BUDGET_MILLIS});
+            return false;
+        }
+    }
+
+    /**
+     * Input that aborts matching once the deadline has passed. The matcher reads every character
+     * it tries through {@link #charAt}, so backtracking cannot run past the budget.
+     */
+    private static final class BudgetedCharSequence implements CharSequence {
+        private static final int CHECK_INTERVAL = 1024;
+
+        private final String value;
+        private final long deadline;
+        private int reads;
+
+        BudgetedCharSequence(String value, long deadline) {
+            this.value = value;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (++reads % CHECK_INTERVAL == 0 && System.nanoTime() > deadline) {
+                throw new BudgetExceededException();
+            }
+            return value.charAt(index);
+        }
+
+        @Override
+        public int length() {
+            return value.length();
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new BudgetedCharSequence(value.substring(start, end), deadline);
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+    }
+
+    private static final class BudgetExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        BudgetExceededException() {
+            super(null, null, false, false);
+        }
+    }
+}
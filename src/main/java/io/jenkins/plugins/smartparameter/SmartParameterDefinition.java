@@ -4,6 +4,7 @@ import hudson.Extension;
 import hudson.model.*;
 import hudson.util.FormValidation;
 import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
@@ -11,22 +12,29 @@ import org.kohsuke.stapler.StaplerRequest;
 import net.sf.json.JSONObject;
 
 import javax.annotation.Nonnull;
+import java.util.List;
 
 /**
  * A parameter that is shown or hidden based on a condition.
  */
-public class SmartParameterDefinition extends SimpleParameterDefinition {
+public class SmartParameterDefinition extends SimpleParameterDefinition implements ConditionalParameter {
 
     private final String defaultValue;
     private String condition;
     private String controlParameter;
     private String controlValue;
+    private String match;
+    /** The compiled rule, replaced as a whole by the setters that change it; never compiled on the read path. */
+    private transient volatile ConditionSnapshot snapshot;
     private ParameterDefinition parameterDefinition;
+    private boolean omitWhenHidden;
+    private boolean liveUpdate;
 
     @DataBoundConstructor
     public SmartParameterDefinition(String name, String description, String defaultValue) {
         super(name, description);
         this.defaultValue = defaultValue;
+        this.snapshot = compileSnapshot();
     }
 
     public String getDefaultValue() {
@@ -40,6 +48,7 @@ public class SmartParameterDefinition extends SimpleParameterDefinition {
     @DataBoundSetter
     public void setCondition(String condition) {
         this.condition = condition;
+        this.snapshot = compileSnapshot();
     }
 
     public String getControlParameter() {
@@ -49,6 +58,7 @@ public class SmartParameterDefinition extends SimpleParameterDefinition {
     @DataBoundSetter
     public void setControlParameter(String controlParameter) {
         this.controlParameter = controlParameter;
+        this.snapshot = compileSnapshot();
     }
 
     public String getControlValue() {
@@ -58,6 +68,20 @@ public class SmartParameterDefinition extends SimpleParameterDefinition {
     @DataBoundSetter
     public void setControlValue(String controlValue) {
         this.controlValue = controlValue;
+        this.snapshot = compileSnapshot();
+    }
+
+    /**
+     * @return "all" if every value of a multi-valued control parameter must meet the condition, otherwise "any"
+     */
+    public String getMatch() {
+        return match != null ? match : ParameterCondition.MATCH_ANY;
+    }
+
+    @DataBoundSetter
+    public void setMatch(String match) {
+        this.match = ParameterCondition.MATCH_ALL.equals(match) ? ParameterCondition.MATCH_ALL : null;
+        this.snapshot = compileSnapshot();
     }
 
     public ParameterDefinition getParameterDefinition() {
@@ -69,56 +93,94 @@ public class SmartParameterDefinition extends SimpleParameterDefinition {
         this.parameterDefinition = parameterDefinition;
     }
 
+    @Override
+    public boolean isOmitWhenHidden() {
+        return omitWhenHidden;
+    }
+
+    @DataBoundSetter
+    public void setOmitWhenHidden(boolean omitWhenHidden) {
+        this.omitWhenHidden = omitWhenHidden;
+    }
+
+    @Override
+    public boolean isLiveUpdate() {
+        return liveUpdate;
+    }
+
+    @DataBoundSetter
+    public void setLiveUpdate(boolean liveUpdate) {
+        this.liveUpdate = liveUpdate;
+    }
+
     /**
      * Evaluate if this parameter should be visible based on the condition.
-     * @param request The request containing other parameter values
+     * @param values The values of other parameters
      * @return true if the parameter should be visible
      */
-    public boolean isVisible(StaplerRequest request) {
-        if (controlParameter == null || controlValue == null) {
-            return true; // If no condition is set, always show
-        }
+    @Override
+    public boolean isVisible(ControlValues values) {
+        return snapshot.isVisible(values);
+    }
 
-        String[] values = request.getParameterValues(controlParameter);
-        if (values == null || values.length == 0) {
-            return false;
-        }
+    @Override
+    public VisibilityCache getVisibilityCache() {
+        return snapshot.getCache();
+    }
 
-        String value = values[0];
-
-        switch (condition) {
-            case "equals":
-                return controlValue.equals(value);
-            case "notEquals":
-                return !controlValue.equals(value);
-            case "contains":
-                return value.contains(controlValue);
-            case "startsWith":
-                return value.startsWith(controlValue);
-            case "endsWith":
-                return value.endsWith(controlValue);
-            default:
-                return true;
-        }
+    @Override
+    public String getManifestType() {
+        return "field";
+    }
+
+    @Override
+    public List<ParameterCondition> getVisibilityConditions() {
+        return snapshot.getConditions();
+    }
+
+    private ConditionSnapshot compileSnapshot() {
+        ParameterCondition compiled =
+                ConditionPool.intern(new ParameterCondition(controlParameter, condition, controlValue, match));
+        return ConditionSnapshot.of(getManifestType(), compiled);
+    }
+
+    /**
+     * Recompiles the condition after the parameter has been loaded from disk, sharing the pooled condition
+     * and its strings with every other job that carries the same condition.
+     */
+    protected Object readResolve() {
+        ConditionSnapshot compiled = compileSnapshot();
+        ParameterCondition pooled = compiled.getConditions().get(0);
+        controlParameter = pooled.getControlParameter();
+        condition = pooled.getCondition();
+        controlValue = pooled.getControlValue();
+        snapshot = compiled;
+        return this;
     }
 
     @Override
     public ParameterValue createValue(StaplerRequest req, JSONObject jo) {
-        if(jo.isNullObject()) {
-            return new TextParameterValue(getName(), defaultValue, getDescription());
-        }
+        return SmartParameterMetrics.time("createValue.field", () -> {
+            if (omitWhenHidden && VisibilityEvaluator.isHiddenOnSubmit(req, this)) {
+                return HiddenParameterValue.of(getName());
+            }
+            if(jo.isNullObject()) {
+                return new TextParameterValue(getName(), defaultValue, getDescription());
+            }
 
-        String value = jo.getString("value");
-        if(value == null || value.isEmpty()){
-            value = defaultValue;
-        }
+            String value = jo.getString("value");
+            if(value == null || value.isEmpty()){
+                value = defaultValue;
+            }
 
-        return new StringParameterValue(getName(), value, getDescription());
+            return new StringParameterValue(getName(), value, getDescription());
+        });
     }
 
     @Override
     public ParameterValue createValue(String value) {
-        return new TextParameterValue(this.getName(), value, this.getDescription());
+        return SmartParameterMetrics.time("createValue.field",
+                () -> new TextParameterValue(this.getName(), value, this.getDescription()));
     }
 
     @Extension
@@ -134,19 +196,21 @@ public class SmartParameterDefinition extends SimpleParameterDefinition {
          * Validates the entered condition.
          */
         public FormValidation doCheckCondition(@QueryParameter String condition) {
-            if (condition == null || condition.isEmpty()) {
-                return FormValidation.error("Condition must not be empty");
-            }
-
-            if (!condition.equals("equals") &&
-                    !condition.equals("notEquals") &&
-                    !condition.equals("contains") &&
-                    !condition.equals("startsWith") &&
-                    !condition.equals("endsWith")) {
-                return FormValidation.error("Invalid condition type");
-            }
-
-            return FormValidation.ok();
+            return SmartParameterMetrics.time("validate.condition", () -> {
+                if (condition == null || condition.isEmpty()) {
+                    return FormValidation.error("Condition must not be empty");
+                }
+
+                if (!condition.equals("equals") &&
+                        !condition.equals("notEquals") &&
+                        !condition.equals("contains") &&
+                        !condition.equals("startsWith") &&
+                        !condition.equals("endsWith")) {
+                    return FormValidation.error("Invalid condition type");
+                }
+
+                return FormValidation.ok();
+            });
         }
 
         public hudson.util.ListBoxModel doFillConditionItems() {
@@ -160,13 +224,17 @@ public class SmartParameterDefinition extends SimpleParameterDefinition {
         }
 
         /**
-         * Validates the control parameter name.
+         * Validates the control parameter name and that it does not create a circular dependency.
          */
-        public FormValidation doCheckControlParameter(@QueryParameter String controlParameter) {
-            if (controlParameter == null || controlParameter.isEmpty()) {
-                return FormValidation.error("Control parameter must not be empty");
-            }
-            return FormValidation.ok();
+        public FormValidation doCheckControlParameter(@QueryParameter String controlParameter,
+                                                      @QueryParameter String name,
+                                                      @AncestorInPath Job<?, ?> job) {
+            return SmartParameterMetrics.time("validate.controlParameter", () -> {
+                if (controlParameter == null || controlParameter.isEmpty()) {
+                    return FormValidation.error("Control parameter must not be empty");
+                }
+                return DependencyGraph.checkForCycle(job, name, controlParameter);
+            });
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,289 @@
+package io.jenkins.plugins.smartparameter;
+
+import hudson.Extension;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import hudson.model.Item;
+import hudson.model.listeners.ItemListener;
+import net.sf.json.JSONObject;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Counts and latencies of everything the plugin evaluates, exposed through JMX and
+ * {@code smart-parameters/metrics}. Timers are named after what they measure:
+ * {@code isVisible.TYPE}, {@code createValue.TYPE}, {@code validate.FIELD} and {@code condition.CONDITION}.
+ * Condition timers measure a random sample of about one in 16 evaluations, so their counts are a fraction of
+ * the evaluations. Job timers are dropped when their job is deleted or renamed.
+ */
+public final class SmartParameterMetrics implements SmartParameterMetricsMBean {
+
+    private static final Logger LOGGER = Logger.getLogger(SmartParameterMetrics.class.getName());
+
+    static final SmartParameterMetrics INSTANCE = new SmartParameterMetrics();
+
+    static final String OBJECT_NAME = "io.jenkins.plugins.smartparameter:type=SmartParameterMetrics";
+
+    static final String REGEX_COMPILATIONS = "regex.compilations";
+    static final String REGEX_BUDGET_EXCEEDED = "regex.budgetExceeded";
+    static final String CACHE_HITS = "cache.hits";
+    static final String CACHE_MISSES = "cache.misses";
+    static final String DECISION_TABLE_LOOKUPS = "decisionTable.lookups";
+    static final String HIDDEN_VALUES_REPLACED = "enforce.hiddenValuesReplaced";
+    static final String EXPRESSION_REORDERS = "expression.reorders";
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> jobs = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    private SmartParameterMetrics() {
+    }
+
+    /**
+     * @return the timer with the given name, created on first use
+     */
+    static Timer timer(String name) {
+        return INSTANCE.timers.computeIfAbsent(name, n -> new Timer());
+    }
+
+    /**
+     * @return the timer of whole-form evaluations of the job with the given full name
+     */
+    static Timer jobTimer(String fullName) {
+        return INSTANCE.jobs.computeIfAbsent(fullName, n -> new Timer());
+    }
+
+    /**
+     * Drops the timers of the job with the given full name and of the jobs inside it, if it is a folder.
+     */
+    static void forgetJob(String fullName) {
+        String prefix = fullName + "/";
+        INSTANCE.jobs.keySet().removeIf(name -> name.equals(fullName) || name.startsWith(prefix));
+    }
+
+    static void increment(String counter) {
+        INSTANCE.counters.computeIfAbsent(counter, n -> new LongAdder()).increment();
+    }
+
+    /**
+     * Runs the given code, recording its latency under the named timer.
+     */
+    static <T> T time(String name, Supplier<T> body) {
+        long start = System.nanoTime();
+        try {
+            return body.get();
+        } finally {
+            timer(name).record(start);
+        }
+    }
+
+    /**
+     * Registers the MBean, replacing one left registered by an earlier Jenkins in the same JVM.
+     */
+    @Initializer(after = InitMilestone.PLUGINS_STARTED)
+    public static void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(INSTANCE, name);
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Could not register the smart parameter metrics MBean", e);
+        }
+    }
+
+    @Terminator
+    public static void unregisterMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Could not unregister the smart parameter metrics MBean", e);
+        }
+    }
+
+    private long count(String counter) {
+        LongAdder adder = counters.get(counter);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    private long countTimers(String prefix) {
+        long count = 0;
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                count += entry.getValue().count.sum();
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public long getVisibilityEvaluations() {
+        return countTimers("isVisible.");
+    }
+
+    @Override
+    public long getValuesCreated() {
+        return countTimers("createValue.");
+    }
+
+    @Override
+    public long getValidations() {
+        return countTimers("validate.");
+    }
+
+    @Override
+    public long getRegexCompilations() {
+        return count(REGEX_COMPILATIONS);
+    }
+
+    @Override
+    public long getRegexBudgetExceeded() {
+        return count(REGEX_BUDGET_EXCEEDED);
+    }
+
+    @Override
+    public long getCacheHits() {
+        return count(CACHE_HITS);
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return count(CACHE_MISSES);
+    }
+
+    @Override
+    public double getCacheHitRate() {
+        long hits = getCacheHits();
+        long total = hits + getCacheMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public long getUniqueConditions() {
+        return ConditionPool.census()[0];
+    }
+
+    @Override
+    public long getTotalConditions() {
+        return ConditionPool.census()[1];
+    }
+
+    @Override
+    public String getMetricsJson() {
+        return toJson().toString();
+    }
+
+    JSONObject toJson() {
+        JSONObject counterValues = new JSONObject();
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(counters).entrySet()) {
+            counterValues.put(entry.getKey(), entry.getValue().sum());
+        }
+        counterValues.put("cache.hitRate", getCacheHitRate());
+
+        long[] census = ConditionPool.census();
+        JSONObject conditions = new JSONObject();
+        conditions.put("unique", census[0]);
+        conditions.put("total", census[1]);
+        conditions.put("pooled", ConditionPool.size());
+
+        JSONObject json = new JSONObject();
+        json.put("counters", counterValues);
+        json.put("conditions", conditions);
+        json.put("timers", toJson(timers));
+        json.put("jobs", toJson(jobs));
+        return json;
+    }
+
+    private static JSONObject toJson(Map<String, Timer> timers) {
+        JSONObject json = new JSONObject();
+        for (Map.Entry<String, Timer> entry : new TreeMap<>(timers).entrySet()) {
+            json.put(entry.getKey(), entry.getValue().toJson());
+        }
+        return json;
+    }
+
+    /**
+     * Keeps the job timers from outliving their jobs.
+     */
+    @Extension
+    public static class JobListener extends ItemListener {
+        @Override
+        public void onDeleted(Item item) {
+            forgetJob(item.getFullName());
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            forgetJob(oldFullName);
+        }
+    }
+
+    /**
+     * Count, total, maximum and power-of-ten latency histogram of one operation.
+     */
+    static final class Timer {
+        /** Upper bounds of the histogram buckets in nanoseconds; the last bucket is unbounded. */
+        private static final long[] BOUNDS = {1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000};
+        private static final String[] LABELS = {"1us", "10us", "100us", "1ms", "10ms", "100ms", "+Inf"};
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder[] buckets = new LongAdder[LABELS.length];
+
+        Timer() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Records an operation that started at the given {@link System#nanoTime()}.
+         */
+        void record(long startNanos) {
+            long nanos = System.nanoTime() - startNanos;
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            int bucket = 0;
+            while (bucket < BOUNDS.length && nanos >= BOUNDS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+        }
+
+        JSONObject toJson() {
+            long n = count.sum();
+            JSONObject histogram = new JSONObject();
+            for (int i = 0; i < buckets.length; i++) {
+                histogram.put(LABELS[i], buckets[i].sum());
+            }
+
+            JSONObject json = new JSONObject();
+            json.put("count", n);
+            json.put("totalNanos", totalNanos.sum());
+            json.put("meanNanos", n == 0 ? 0 : totalNanos.sum() / n);
+            json.put("maxNanos", maxNanos.get());
+            json.put("histogram", histogram);
+            return json;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package io.jenkins.plugins.smartparameter;
+
+/**
+ * JMX view of {@link SmartParameterMetrics}, registered as
+ * {@code io.jenkins.plugins.smartparameter:type=SmartParameterMetrics}.
+ */
+public interface SmartParameterMetricsMBean {
+
+    /**
+     * @return the number of visibility evaluations of all parameter types, cached or not
+     */
+    long getVisibilityEvaluations();
+
+    /**
+     * @return the number of parameter values created on build submission
+     */
+    long getValuesCreated();
+
+    /**
+     * @return the number of configuration form validations
+     */
+    long getValidations();
+
+    long getRegexCompilations();
+
+    /**
+     * @return the number of regex matches cut off by the time budget
+     */
+    long getRegexBudgetExceeded();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    /**
+     * @return the share of cached visibility lookups that were hits, between 0 and 1
+     */
+    double getCacheHitRate();
+
+    /**
+     * @return the number of distinct condition instances used by the conditional parameters of all jobs
+     */
+    long getUniqueConditions();
+
+    /**
+     * @return the number of conditions of all jobs, counting each use of a shared condition
+     */
+    long getTotalConditions();
+
+    /**
+     * @return all metrics, including latency histograms and per-job timings, as JSON
+     */
+    String getMetricsJson();
+}
@@ -0,0 +1,178 @@
+package io.jenkins.plugins.smartparameter;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Action;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.ParameterDefinition;
+import jenkins.model.TransientActionFactory;
+import org.apache.commons.io.IOUtils;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.verb.POST;
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+
+import javax.annotation.Nonnull;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Job action exposing smart parameter evaluation under {@code job/NAME/smartParameters/}.
+ */
+public class SmartParametersAction implements Action {
+
+    private final Job<?, ?> job;
+
+    public SmartParametersAction(Job<?, ?> job) {
+        this.job = job;
+    }
+
+    public Job<?, ?> getJob() {
+        return job;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null; // Not shown in the side panel
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Smart Parameters";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "smartParameters";
+    }
+
+    /**
+     * Evaluates the visibility of every smart parameter, wrapped parameter and wrapper-referenced
+     * parameter of the job in one call. The request body is a JSON object mapping parameter names
+     * to a value or an array of values; parameters that are not given use their default value.
+     * Responds with {@code {"visibility": {"NAME": true, ...}}}.
+     */
+    @POST
+    public void doEvaluate(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        job.checkPermission(Item.BUILD);
+
+        Map<String, String[]> submitted;
+        try {
+            submitted = parseValues(IOUtils.toString(req.getReader()));
+        } catch (JSONException e) {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Request body must be a JSON object: " + e.getMessage());
+            return;
+        }
+
+        Map<String, Boolean> visibility =
+                VisibilityEvaluator.evaluate(job, VisibilityEvaluator.initialValues(job, submitted));
+
+        JSONObject result = new JSONObject();
+        result.put("visibility", visibility);
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.getWriter().print(result);
+    }
+
+    /**
+     * Reports the visibility cache of every conditional parameter of the job, as
+     * {@code {"cache": {"NAME": {"hits": 12, "misses": 3, "size": 3}, ...}}}.
+     */
+    public void doCache(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        job.checkPermission(Item.CONFIGURE);
+
+        JSONObject parameters = new JSONObject();
+        for (ConditionalParameter parameter : VisibilityEvaluator.forJob(job)) {
+            VisibilityCache cache = parameter.getVisibilityCache();
+            if (cache == null) {
+                continue;
+            }
+            JSONObject entry = new JSONObject();
+            entry.put("hits", cache.getHits());
+            entry.put("misses", cache.getMisses());
+            entry.put("size", cache.size());
+            parameters.put(parameter.getName(), entry);
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("cache", parameters);
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.getWriter().print(result);
+    }
+
+    /**
+     * Renders the wrapped parameter of a wrapper with lazy rendering, for the client to insert
+     * into the build form the first time the wrapper is shown.
+     */
+    public void doFragment(StaplerRequest req, StaplerResponse rsp, @QueryParameter String name)
+            throws IOException, ServletException {
+        job.checkPermission(Item.BUILD);
+
+        for (ConditionalParameter parameter : VisibilityEvaluator.forJob(job)) {
+            ParameterDefinition wrapped = parameter.getWrappedParameter();
+            if (wrapped != null && parameter.isLazyRendering() && parameter.getName().equals(name)) {
+                req.getView(wrapped, "index.jelly").forward(req, rsp);
+                return;
+            }
+        }
+        rsp.sendError(HttpServletResponse.SC_NOT_FOUND, "No lazily rendered wrapper named " + name);
+    }
+
+    /**
+     * @return the URL of the wrapped parameter fragment of the given wrapper on the job being rendered,
+     *         or null if there is no such job
+     */
+    static String getFragmentUrl(StaplerRequest req, String name) {
+        Job<?, ?> job = req == null ? null : req.findAncestorObject(Job.class);
+        if (job == null) {
+            return null;
+        }
+        return req.getContextPath() + '/' + job.getUrl() + "smartParameters/fragment?name=" + Util.rawEncode(name);
+    }
+
+    private static Map<String, String[]> parseValues(String body) {
+        Map<String, String[]> values = new HashMap<>();
+        if (body == null || body.trim().isEmpty()) {
+            return values;
+        }
+
+        JSONObject json = JSONObject.fromObject(body);
+        for (Object key : json.keySet()) {
+            String name = key.toString();
+            String[] value = VisibilityEvaluator.toStrings(json.get(name));
+            if (value != null) {
+                values.put(name, value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Adds the action to every job that has conditional parameters.
+     */
+    @Extension
+    @SuppressWarnings("rawtypes")
+    public static class Factory extends TransientActionFactory<Job> {
+
+        @Override
+        public Class<Job> type() {
+            return Job.class;
+        }
+
+        @Nonnull
+        @Override
+        public Collection<? extends Action> createFor(@Nonnull Job target) {
+            if (VisibilityEvaluator.forJob(target).isEmpty()) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(new SmartParametersAction(target));
+        }
+    }
+}
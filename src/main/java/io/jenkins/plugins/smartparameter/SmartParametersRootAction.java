@@ -0,0 +1,42 @@
+package io.jenkins.plugins.smartparameter;
+
+import hudson.Extension;
+import hudson.model.RootAction;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.IOException;
+
+/**
+ * Plugin-wide endpoints under {@code smart-parameters/}.
+ */
+@Extension
+public class SmartParametersRootAction implements RootAction {
+
+    @Override
+    public String getIconFileName() {
+        return null; // Not shown in the side panel
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Smart Parameters";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "smart-parameters";
+    }
+
+    /**
+     * Reports the plugin's evaluation metrics as JSON: counters, latency histograms by operation
+     * and condition type, and whole-form evaluation timings by job.
+     */
+    public void doMetrics(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins.get().checkPermission(Jenkins.SYSTEM_READ);
+
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.getWriter().print(SmartParameterMetrics.INSTANCE.toJson());
+    }
+}
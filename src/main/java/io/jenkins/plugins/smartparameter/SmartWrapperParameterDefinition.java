@@ -1,34 +1,46 @@
 package io.jenkins.plugins.smartparameter;
 
 import hudson.Extension;
+import hudson.model.Job;
 import hudson.model.ParameterDefinition;
 import hudson.model.ParameterValue;
 import hudson.util.FormValidation;
 import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.RelativePath;
 import org.kohsuke.stapler.StaplerRequest;
 import net.sf.json.JSONObject;
 
 import javax.annotation.Nonnull;
+import java.util.List;
 
 /**
  * A wrapper that makes another parameter visible or hidden based on a condition.
  */
-public class SmartWrapperParameterDefinition extends ParameterDefinition {
+public class SmartWrapperParameterDefinition extends ParameterDefinition implements ConditionalParameter {
 
     private ParameterDefinition wrappedParameter;
     private String refParameter;
     private String condition;
     private String controlParameter;
     private String controlValue;
+    private String match;
+    private boolean omitWhenHidden;
+    private boolean liveUpdate;
+    private boolean lazyRendering;
+    /** The compiled rule, replaced as a whole by the setters that change it; never compiled on the read path. */
+    private transient volatile ConditionSnapshot snapshot;
 
     @DataBoundConstructor
     public SmartWrapperParameterDefinition(String name, String description) {
         super(name, description);
+        this.snapshot = compileSnapshot();
     }
 
+    @Override
     public ParameterDefinition getWrappedParameter() {
         return wrappedParameter;
     }
@@ -47,6 +59,36 @@ public class SmartWrapperParameterDefinition extends ParameterDefinition {
         this.refParameter = refParameter;
     }
 
+    @Override
+    public boolean isOmitWhenHidden() {
+        return omitWhenHidden;
+    }
+
+    @DataBoundSetter
+    public void setOmitWhenHidden(boolean omitWhenHidden) {
+        this.omitWhenHidden = omitWhenHidden;
+    }
+
+    @Override
+    public boolean isLiveUpdate() {
+        return liveUpdate;
+    }
+
+    @DataBoundSetter
+    public void setLiveUpdate(boolean liveUpdate) {
+        this.liveUpdate = liveUpdate;
+    }
+
+    @Override
+    public boolean isLazyRendering() {
+        return lazyRendering;
+    }
+
+    @DataBoundSetter
+    public void setLazyRendering(boolean lazyRendering) {
+        this.lazyRendering = lazyRendering;
+    }
+
     public String getCondition() {
         return condition;
     }
@@ -54,6 +96,7 @@ public class SmartWrapperParameterDefinition extends ParameterDefinition {
     @DataBoundSetter
     public void setCondition(String condition) {
         this.condition = condition;
+        this.snapshot = compileSnapshot();
     }
 
     public String getControlParameter() {
@@ -63,6 +106,7 @@ public class SmartWrapperParameterDefinition extends ParameterDefinition {
     @DataBoundSetter
     public void setControlParameter(String controlParameter) {
         this.controlParameter = controlParameter;
+        this.snapshot = compileSnapshot();
     }
 
     public String getControlValue() {
@@ -72,55 +116,97 @@ public class SmartWrapperParameterDefinition extends ParameterDefinition {
     @DataBoundSetter
     public void setControlValue(String controlValue) {
         this.controlValue = controlValue;
+        this.snapshot = compileSnapshot();
+    }
+
+    /**
+     * @return "all" if every value of a multi-valued control parameter must meet the condition, otherwise "any"
+     */
+    public String getMatch() {
+        return match != null ? match : ParameterCondition.MATCH_ANY;
+    }
+
+    @DataBoundSetter
+    public void setMatch(String match) {
+        this.match = ParameterCondition.MATCH_ALL.equals(match) ? ParameterCondition.MATCH_ALL : null;
+        this.snapshot = compileSnapshot();
     }
 
     /**
      * Evaluate if this parameter should be visible based on the condition.
-     * @param request The request containing other parameter values
+     * @param values The values of other parameters
      * @return true if the parameter should be visible
      */
-    public boolean isVisible(StaplerRequest request) {
-        if (controlParameter == null || controlValue == null) {
-            return true; // If no condition is set, always show
-        }
+    @Override
+    public boolean isVisible(ControlValues values) {
+        return snapshot.isVisible(values);
+    }
 
-        String[] values = request.getParameterValues(controlParameter);
-        if (values == null || values.length == 0) {
-            return false;
-        }
+    @Override
+    public VisibilityCache getVisibilityCache() {
+        return snapshot.getCache();
+    }
 
-        String value = values[0];
-
-        switch (condition) {
-            case "equals":
-                return controlValue.equals(value);
-            case "notEquals":
-                return !controlValue.equals(value);
-            case "contains":
-                return value.contains(controlValue);
-            case "startsWith":
-                return value.startsWith(controlValue);
-            case "endsWith":
-                return value.endsWith(controlValue);
-            default:
-                return true;
-        }
+    @Override
+    public String getManifestType() {
+        return "wrapper";
+    }
+
+    @Override
+    public List<ParameterCondition> getVisibilityConditions() {
+        return snapshot.getConditions();
+    }
+
+    @Override
+    public List<String> getReferencedParameters() {
+        return ConditionalParameter.splitNames(getName(), refParameter);
+    }
+
+    private ConditionSnapshot compileSnapshot() {
+        ParameterCondition compiled =
+                ConditionPool.intern(new ParameterCondition(controlParameter, condition, controlValue, match));
+        return ConditionSnapshot.of(getManifestType(), compiled);
+    }
+
+    /**
+     * Recompiles the condition after the parameter has been loaded from disk, sharing the pooled condition
+     * and its strings with every other job that carries the same condition.
+     */
+    protected Object readResolve() {
+        ConditionSnapshot compiled = compileSnapshot();
+        ParameterCondition pooled = compiled.getConditions().get(0);
+        controlParameter = pooled.getControlParameter();
+        condition = pooled.getCondition();
+        controlValue = pooled.getControlValue();
+        snapshot = compiled;
+        return this;
     }
 
     @Override
     public ParameterValue createValue(StaplerRequest req, JSONObject jo) {
-        if (wrappedParameter != null) {
-            return wrappedParameter.createValue(req, jo);
-        }
-        return null;
+        return SmartParameterMetrics.time("createValue.wrapper", () -> {
+            if (wrappedParameter != null) {
+                if (omitWhenHidden && VisibilityEvaluator.isHiddenOnSubmit(req, this)) {
+                    return HiddenParameterValue.of(wrappedParameter.getName());
+                }
+                if (jo.optBoolean("lazy")) {
+                    // Never shown, so never rendered: the form holds no value for the wrapped parameter
+                    return wrappedParameter.getDefaultParameterValue();
+                }
+                return wrappedParameter.createValue(req, jo);
+            }
+            return null;
+        });
     }
 
     @Override
     public ParameterValue createValue(StaplerRequest req) {
-        if (wrappedParameter != null) {
-            return wrappedParameter.createValue(req);
-        }
-        return null;
+        return SmartParameterMetrics.time("createValue.wrapper", () -> {
+            if (wrappedParameter != null) {
+                return wrappedParameter.createValue(req);
+            }
+            return null;
+        });
     }
 
     @Extension
@@ -136,19 +222,21 @@ public class SmartWrapperParameterDefinition extends ParameterDefinition {
          * Validates the entered condition.
          */
         public FormValidation doCheckCondition(@QueryParameter String condition) {
-            if (condition == null || condition.isEmpty()) {
-                return FormValidation.error("Condition must not be empty");
-            }
+            return SmartParameterMetrics.time("validate.condition", () -> {
+                if (condition == null || condition.isEmpty()) {
+                    return FormValidation.error("Condition must not be empty");
+                }
 
-            if (!condition.equals("equals") &&
-                    !condition.equals("notEquals") &&
-                    !condition.equals("contains") &&
-                    !condition.equals("startsWith") &&
-                    !condition.equals("endsWith")) {
-                return FormValidation.error("Invalid condition type");
-            }
+                if (!condition.equals("equals") &&
+                        !condition.equals("notEquals") &&
+                        !condition.equals("contains") &&
+                        !condition.equals("startsWith") &&
+                        !condition.equals("endsWith")) {
+                    return FormValidation.error("Invalid condition type");
+                }
 
-            return FormValidation.ok();
+                return FormValidation.ok();
+            });
         }
 
         public hudson.util.ListBoxModel doFillConditionItems() {
@@ -162,23 +250,32 @@ public class SmartWrapperParameterDefinition extends ParameterDefinition {
         }
 
         /**
-         * Validates the control parameter name.
+         * Validates the control parameter name and that it does not create a circular dependency.
          */
-        public FormValidation doCheckControlParameter(@QueryParameter String controlParameter) {
-            if (controlParameter == null || controlParameter.isEmpty()) {
-                return FormValidation.error("Control parameter must not be empty");
-            }
-            return FormValidation.ok();
+        public FormValidation doCheckControlParameter(@QueryParameter String controlParameter,
+                                                      @QueryParameter String name,
+                                                      @QueryParameter String refParameter,
+                                                      @RelativePath("wrappedParameter") @QueryParameter("name")
+                                                      String wrappedName,
+                                                      @AncestorInPath Job<?, ?> job) {
+            return SmartParameterMetrics.time("validate.controlParameter", () -> {
+                if (controlParameter == null || controlParameter.isEmpty()) {
+                    return FormValidation.error("Control parameter must not be empty");
+                }
+                return DependencyGraph.checkForCycle(job, name, refParameter, wrappedName, controlParameter);
+            });
         }
 
         /**
          * Validates that a wrapped parameter is selected.
          */
         public FormValidation doCheckWrappedParameter(@QueryParameter ParameterDefinition wrappedParameter) {
-            if (wrappedParameter == null) {
-                return FormValidation.error("You must select a parameter to wrap");
-            }
-            return FormValidation.ok();
+            return SmartParameterMetrics.time("validate.wrappedParameter", () -> {
+                if (wrappedParameter == null) {
+                    return FormValidation.error("You must select a parameter to wrap");
+                }
+                return FormValidation.ok();
+            });
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,146 @@
+package io.jenkins.plugins.smartparameter;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Bounded cache of the visibility decisions of one parameter definition, keyed by the values of
+ * the parameters its conditions read. Definitions drop their cache whenever their conditions change,
+ * and saving the job configuration replaces the definitions, so a cached decision is never stale.
+ * <p>
+ * Decisions are kept in a fixed table of slots chosen by the hash of the control values, and a new decision
+ * replaces whatever its slot held. Lookups take no lock and, on a hit, allocate nothing: the current values
+ * are hashed and compared in place, and only copied when a decision is stored.
+ */
+public final class VisibilityCache {
+
+    /** Maximum number of value combinations kept per definition; 0 disables caching. */
+    static final int MAX_SIZE = Integer.getInteger(VisibilityCache.class.getName() + ".maxSize", 64);
+
+    private final SmartParameterMetrics.Timer timer;
+    private final String[] controlParameters;
+    private final AtomicReferenceArray<Entry> decisions;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param type The manifest type of the definition, used to name its evaluation timer
+     * @param controlParameters The names of the parameters whose values decide visibility
+     */
+    VisibilityCache(String type, Collection<String> controlParameters) {
+        this.timer = SmartParameterMetrics.timer("isVisible." + type);
+        this.controlParameters = controlParameters.toArray(new String[0]);
+        this.decisions = MAX_SIZE <= 0 ? null : new AtomicReferenceArray<>(tableSize(MAX_SIZE));
+    }
+
+    /**
+     * @return the smallest power of two that holds the given number of slots
+     */
+    private static int tableSize(int maxSize) {
+        int size = 1;
+        while (size < maxSize && size < 1 << 30) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    /**
+     * Looks up the decision for the current control values, evaluating and storing it on a miss.
+     * @param values The values of other parameters
+     * @param evaluator Evaluates the conditions of the definition
+     * @return true if the parameter should be visible
+     */
+    boolean isVisible(ControlValues values, Predicate<ControlValues> evaluator) {
+        long start = System.nanoTime();
+        try {
+            return lookup(values, evaluator);
+        } finally {
+            timer.record(start);
+        }
+    }
+
+    private boolean lookup(ControlValues values, Predicate<ControlValues> evaluator) {
+        if (decisions == null) {
+            return evaluator.test(values);
+        }
+
+        int hash = 1;
+        for (String name : controlParameters) {
+            hash = 31 * hash + Arrays.hashCode(values.get(name));
+        }
+        hash ^= hash >>> 16;
+        int slot = hash & (decisions.length() - 1);
+
+        Entry entry = decisions.get(slot);
+        if (entry != null && entry.matches(hash, controlParameters, values)) {
+            hits.increment();
+            SmartParameterMetrics.increment(SmartParameterMetrics.CACHE_HITS);
+            return entry.visible;
+        }
+
+        misses.increment();
+        SmartParameterMetrics.increment(SmartParameterMetrics.CACHE_MISSES);
+        int exceeded = RegexSupport.budgetExceededCount();
+        boolean visible = evaluator.test(values);
+        // A regex cut off by its time budget reads as no match; that is not a decision worth keeping
+        if (RegexSupport.budgetExceededCount() == exceeded) {
+            decisions.set(slot, new Entry(hash, controlParameters, values, visible));
+        }
+        return visible;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        if (decisions == null) {
+            return 0;
+        }
+        int size = 0;
+        for (int i = 0; i < decisions.length(); i++) {
+            if (decisions.get(i) != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * One immutable decision, holding its own copy of the control values it was made for.
+     */
+    private static final class Entry {
+        private final int hash;
+        private final String[][] values;
+        private final boolean visible;
+
+        Entry(int hash, String[] controlParameters, ControlValues values, boolean visible) {
+            this.hash = hash;
+            this.values = new String[controlParameters.length][];
+            for (int i = 0; i < controlParameters.length; i++) {
+                String[] current = values.get(controlParameters[i]);
+                this.values[i] = current == null ? null : current.clone();
+            }
+            this.visible = visible;
+        }
+
+        boolean matches(int hash, String[] controlParameters, ControlValues values) {
+            if (this.hash != hash) {
+                return false;
+            }
+            for (int i = 0; i < controlParameters.length; i++) {
+                if (!Arrays.equals(this.values[i], values.get(controlParameters[i]))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package io.jenkins.plugins.smartparameter;
+
+import hudson.Extension;
+import hudson.model.Job;
+import hudson.model.ParameterDefinition;
+import hudson.model.ParameterValue;
+import hudson.model.ParametersAction;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Applies the visibility rules of a job to the parameter values of a build, whichever way the build was triggered:
+ * the build form, {@code buildWithParameters}, the CLI, or an upstream job. Those paths other than the form create
+ * each value on its own, without looking at the others, so this is the only place that sees the whole set.
+ * <p>
+ * Only parameters configured not to record their value when hidden opt in: a hidden one gets a
+ * {@link HiddenParameterValue}, and the other parameters it hides get their default value. Builds of jobs without
+ * such parameters are left as they are, without evaluating anything.
+ */
+final class VisibilityEnforcer {
+
+    private static final Logger LOGGER = Logger.getLogger(VisibilityEnforcer.class.getName());
+
+    /** Set to true to record the values of hidden parameters as they were triggered with. */
+    static final boolean DISABLED = Boolean.getBoolean(VisibilityEnforcer.class.getName() + ".disabled");
+
+    private VisibilityEnforcer() {
+    }
+
+    /**
+     * Evaluates the job's parameters against the values of a build, once, in one pass over its dependency graph.
+     * Defaults are only computed for control parameters the build has no value for, and for the hidden
+     * parameters that are replaced.
+     * @param job The job the build belongs to
+     * @param values The values the build was scheduled with
+     * @return the values that replace those of hidden parameters; empty if every value can be kept
+     */
+    static List<ParameterValue> enforce(Job<?, ?> job, List<ParameterValue> values) {
+        Set<String> omitted = new HashSet<>();
+        Set<String> enforced = new HashSet<>();
+        for (ConditionalParameter parameter : VisibilityEvaluator.forJob(job)) {
+            if (parameter.isOmitWhenHidden()) {
+                ParameterDefinition wrapped = parameter.getWrappedParameter();
+                omitted.add(wrapped != null ? wrapped.getName() : parameter.getName());
+                enforced.addAll(parameter.getControlledParameters());
+            }
+        }
+        if (enforced.isEmpty() || values.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<String, ParameterDefinition> definitions = new HashMap<>();
+        for (ParameterDefinition definition : VisibilityEvaluator.definitionsOf(job)) {
+            definitions.put(definition.getName(), definition);
+            if (definition instanceof ConditionalParameter) {
+                ParameterDefinition wrapped = ((ConditionalParameter) definition).getWrappedParameter();
+                if (wrapped != null) {
+                    definitions.put(wrapped.getName(), wrapped);
+                }
+            }
+        }
+
+        // Multi-selects are split into their selections, as the build form submits them
+        Map<String, String[]> submitted = new HashMap<>();
+        for (ParameterValue value : values) {
+            if (value != null && !(value instanceof HiddenParameterValue)) {
+                submitted.put(value.getName(),
+                        VisibilityEvaluator.toStrings(definitions.get(value.getName()), value));
+            }
+        }
+        Map<String, Boolean> visibility = VisibilityEvaluator.evaluate(job,
+                VisibilityEvaluator.initialValues(job, submitted));
+
+        List<ParameterValue> replacements = new ArrayList<>();
+        for (ParameterValue value : values) {
+            if (value == null || value instanceof HiddenParameterValue || !enforced.contains(value.getName())
+                    || !Boolean.FALSE.equals(visibility.get(value.getName()))) {
+                continue;
+            }
+            ParameterValue replacement;
+            if (omitted.contains(value.getName())) {
+                replacement = HiddenParameterValue.of(value.getName());
+            } else {
+                ParameterDefinition definition = definitions.get(value.getName());
+                replacement = definition == null ? null : VisibilityEvaluator.defaultParameterValue(definition);
+            }
+            if (replacement != null && !Objects.equals(replacement.getValue(), value.getValue())) {
+                replacements.add(replacement);
+                SmartParameterMetrics.increment(SmartParameterMetrics.HIDDEN_VALUES_REPLACED);
+            }
+        }
+        return replacements;
+    }
+
+    /**
+     * Enforces visibility once per build, when the run is initialized on its executor, before any step reads its
+     * parameters. This keeps the evaluation, which may match regular expressions and compute the defaults of
+     * other plugins' parameters, out of the queue's critical section.
+     */
+    @Extension
+    public static class InitializeHook extends RunListener<Run<?, ?>> {
+        @Override
+        public void onInitialize(Run<?, ?> run) {
+            if (DISABLED) {
+                return;
+            }
+            ParametersAction action = run.getAction(ParametersAction.class);
+            if (action == null) {
+                return;
+            }
+
+            Job<?, ?> job = run.getParent();
+            try {
+                List<ParameterValue> replacements = SmartParameterMetrics.time("enforce.run",
+                        () -> enforce(job, action.getParameters()));
+                if (!replacements.isEmpty()) {
+                    run.replaceAction(action.merge(new ParametersAction(replacements)));
+                }
+            } catch (RuntimeException e) {
+                // Never fail a build over this; it runs with the values it was triggered with
+                LOGGER.log(Level.WARNING, "Could not enforce smart parameter visibility for "
+                        + run.getFullDisplayName(), e);
+            }
+        }
+    }
+}
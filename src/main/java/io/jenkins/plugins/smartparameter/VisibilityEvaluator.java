@@ -0,0 +1,322 @@
+package io.jenkins.plugins.smartparameter;
+
+import hudson.model.ChoiceParameterDefinition;
+import hudson.model.Job;
+import hudson.model.ParameterDefinition;
+import hudson.model.ParameterValue;
+import hudson.model.ParametersDefinitionProperty;
+import org.kohsuke.stapler.StaplerRequest;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+
+import javax.servlet.ServletException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Evaluates the visibility of all conditional parameters of a job at once.
+ */
+final class VisibilityEvaluator {
+
+    private static final String SUBMITTED_ATTRIBUTE = VisibilityEvaluator.class.getName() + ".submitted";
+
+    /**
+     * The {@code getType} and {@code getMultiSelectDelimiter} methods of each parameter class, or null if it has
+     * none, looked up once per class by name so that the plugin does not depend on the Extended Choice plugin.
+     */
+    private static final ClassValue<Method[]> MULTI_SELECT_ACCESSORS = new ClassValue<Method[]>() {
+        @Override
+        protected Method[] computeValue(Class<?> type) {
+            try {
+                return new Method[] {type.getMethod("getType"), type.getMethod("getMultiSelectDelimiter")};
+            } catch (NoSuchMethodException | SecurityException e) {
+                return null;
+            }
+        }
+    };
+
+    private VisibilityEvaluator() {
+    }
+
+    /**
+     * @return the conditional parameters defined on the job, in configured order
+     */
+    static List<ConditionalParameter> forJob(Job<?, ?> job) {
+        List<ConditionalParameter> parameters = new ArrayList<>();
+        for (ParameterDefinition definition : definitionsOf(job)) {
+            if (definition instanceof ConditionalParameter) {
+                parameters.add((ConditionalParameter) definition);
+            }
+        }
+        return parameters;
+    }
+
+    static List<ParameterDefinition> definitionsOf(Job<?, ?> job) {
+        ParametersDefinitionProperty property = job.getProperty(ParametersDefinitionProperty.class);
+        if (property == null) {
+            return Collections.emptyList();
+        }
+        return property.getParameterDefinitions();
+    }
+
+    /**
+     * Collects the choices of the job's choice parameters, including wrapped ones.
+     * @return the choices by parameter name
+     */
+    static Map<String, List<String>> finiteDomains(Job<?, ?> job) {
+        Map<String, List<String>> domains = new HashMap<>();
+        for (ParameterDefinition definition : definitionsOf(job)) {
+            if (definition instanceof ConditionalParameter) {
+                definition = ((ConditionalParameter) definition).getWrappedParameter();
+            }
+            if (definition instanceof ChoiceParameterDefinition) {
+                domains.put(definition.getName(), ((ChoiceParameterDefinition) definition).getChoices());
+            }
+        }
+        return domains;
+    }
+
+    /**
+     * Evaluates every conditional parameter of the job in one pass over its dependency graph.
+     * Parameters referenced by a wrapper, and the parameter it wraps, follow the wrapper;
+     * a parameter referenced by several wrappers is visible only if all of them are.
+     * @param job The job whose parameters are evaluated
+     * @param values The values to evaluate against, typically from {@link #initialValues}
+     * @return the visibility of each parameter by name
+     */
+    static Map<String, Boolean> evaluate(Job<?, ?> job, Map<String, String[]> values) {
+        DependencyGraph graph = DependencyGraph.forJob(job);
+        Map<String, Boolean> decisions = evaluate(job, graph, ControlValues.of(values));
+
+        Map<String, Boolean> visibility = new LinkedHashMap<>();
+        for (ConditionalParameter parameter : graph.getEvaluationOrder()) {
+            boolean visible = decisions.get(parameter.getName());
+            for (String name : parameter.getControlledParameters()) {
+                visibility.merge(name, visible, Boolean::logicalAnd);
+            }
+        }
+        return visibility;
+    }
+
+    /**
+     * Evaluates the graph of a job, recording the time it takes under the job's name.
+     * @return the visibility of each conditional parameter by name, in evaluation order
+     */
+    static Map<String, Boolean> evaluate(Job<?, ?> job, DependencyGraph graph, ControlValues values) {
+        long start = System.nanoTime();
+        try {
+            return graph.evaluate(values);
+        } finally {
+            SmartParameterMetrics.jobTimer(job.getFullName()).record(start);
+        }
+    }
+
+    /**
+     * Collects the values the job's conditions read: the given value of each control parameter, or its default
+     * value if none is given. Defaults are only computed for control parameters without a given value, since
+     * parameters of other plugins may run scripts to compute them.
+     * @param job The job whose parameters are collected
+     * @param overrides Values to use instead of the defaults, may be null
+     * @return the values by parameter name; a null value means the parameter has no value
+     */
+    static Map<String, String[]> initialValues(Job<?, ?> job, Map<String, String[]> overrides) {
+        Map<String, String[]> values = new HashMap<>();
+        Set<String> controlParameters = DependencyGraph.forJob(job).getControlParameterNames();
+        if (controlParameters.isEmpty()) {
+            return values;
+        }
+        for (ParameterDefinition definition : definitionsOf(job)) {
+            addInitialValue(values, definition, controlParameters, overrides);
+            if (definition instanceof ConditionalParameter) {
+                addInitialValue(values, ((ConditionalParameter) definition).getWrappedParameter(),
+                        controlParameters, overrides);
+            }
+        }
+        return values;
+    }
+
+    private static void addInitialValue(Map<String, String[]> values, ParameterDefinition definition,
+                                        Set<String> controlParameters, Map<String, String[]> overrides) {
+        if (definition == null || !controlParameters.contains(definition.getName())) {
+            return;
+        }
+        String name = definition.getName();
+        if (overrides != null && overrides.containsKey(name)) {
+            values.put(name, overrides.get(name));
+            return;
+        }
+        String value = defaultValueOf(definition);
+        values.put(name, value == null ? null : new String[] {value});
+    }
+
+    private static String defaultValueOf(ParameterDefinition definition) {
+        // The smart parameter types hold their default as a string, no value needs to be created
+        if (definition instanceof SmartParameterDefinition) {
+            return ((SmartParameterDefinition) definition).getDefaultValue();
+        }
+        if (definition instanceof MultiConditionParameterDefinition) {
+            return ((MultiConditionParameterDefinition) definition).getDefaultValue();
+        }
+        ParameterValue value = defaultParameterValue(definition);
+        Object raw = value == null ? null : value.getValue();
+        return raw == null ? null : raw.toString();
+    }
+
+    /**
+     * @return the value a parameter has when nothing is submitted for it, or null if it has none or it
+     *         cannot be computed
+     */
+    static ParameterValue defaultParameterValue(ParameterDefinition definition) {
+        if (definition instanceof SmartParameterDefinition) {
+            SmartParameterDefinition smart = (SmartParameterDefinition) definition;
+            return smart.createValue(smart.getDefaultValue());
+        }
+        if (definition instanceof MultiConditionParameterDefinition) {
+            MultiConditionParameterDefinition multi = (MultiConditionParameterDefinition) definition;
+            return multi.createValue(multi.getDefaultValue());
+        }
+        try {
+            return definition.getDefaultParameterValue();
+        } catch (RuntimeException e) {
+            return null; // Some parameter types cannot compute a default outside of a build
+        }
+    }
+
+    /**
+     * Checks whether a parameter was hidden on the build form that was submitted with the request.
+     * Visibility is evaluated once per request, against the submitted values and the defaults of
+     * parameters that were not submitted.
+     * @param request The build submission, may be null
+     * @param parameter The parameter whose value is being created
+     * @return true only if the parameter, or the parameter it wraps, was hidden
+     */
+    static boolean isHiddenOnSubmit(StaplerRequest request, ConditionalParameter parameter) {
+        if (request == null) {
+            return false;
+        }
+
+        Object visibility = request.getAttribute(SUBMITTED_ATTRIBUTE);
+        if (!(visibility instanceof Map)) {
+            visibility = submittedVisibility(request);
+            request.setAttribute(SUBMITTED_ATTRIBUTE, visibility);
+        }
+
+        ParameterDefinition wrapped = parameter.getWrappedParameter();
+        String name = wrapped != null ? wrapped.getName() : parameter.getName();
+        return Boolean.FALSE.equals(((Map<?, ?>) visibility).get(name));
+    }
+
+    private static Map<String, Boolean> submittedVisibility(StaplerRequest request) {
+        Job<?, ?> job = request.findAncestorObject(Job.class);
+        if (job == null) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, String[]> submitted = new HashMap<>();
+        try {
+            Object parameters = request.getSubmittedForm().opt("parameter");
+            List<Object> entries = parameters instanceof JSONArray
+                    ? (JSONArray) parameters : Collections.singletonList(parameters);
+            for (Object entry : entries) {
+                if (entry instanceof JSONObject && ((JSONObject) entry).has("name")) {
+                    JSONObject jo = (JSONObject) entry;
+                    String[] value = toStrings(jo.opt("value"));
+                    if (value != null) {
+                        submitted.put(jo.getString("name"), value);
+                    }
+                }
+            }
+        } catch (ServletException | JSONException e) {
+            return Collections.emptyMap(); // Keep every value if the form cannot be read
+        }
+        return evaluate(job, initialValues(job, submitted));
+    }
+
+    /**
+     * Converts a submitted JSON value to parameter values.
+     * @param value A single value or an array of values
+     * @return the values as strings, or null if there is no value
+     */
+    static String[] toStrings(Object value) {
+        if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            String[] strings = new String[array.size()];
+            for (int i = 0; i < array.size(); i++) {
+                strings[i] = String.valueOf(array.get(i));
+            }
+            return strings;
+        }
+        if (value == null || value instanceof JSONObject && ((JSONObject) value).isNullObject()) {
+            return null;
+        }
+        return new String[] {String.valueOf(value)};
+    }
+
+    /**
+     * Converts the value of a build parameter to the values its control submits in the build form: the elements
+     * of an array or collection, or the selections of a multi-select or checkbox group that the parameter joined
+     * with its delimiter, as Extended Choice parameters do.
+     * @param definition The definition of the parameter, may be null
+     * @param value The value of the parameter
+     * @return the values as strings, or null if there is no value or nothing is selected
+     */
+    static String[] toStrings(ParameterDefinition definition, ParameterValue value) {
+        Object raw = value.getValue();
+        if (raw instanceof Object[]) {
+            raw = Arrays.asList((Object[]) raw);
+        }
+        if (raw instanceof Collection) {
+            Collection<?> collection = (Collection<?>) raw;
+            if (collection.isEmpty()) {
+                return null;
+            }
+            String[] strings = new String[collection.size()];
+            int i = 0;
+            for (Object element : collection) {
+                strings[i++] = String.valueOf(element);
+            }
+            return strings;
+        }
+        if (raw == null) {
+            return null;
+        }
+
+        String string = raw.toString();
+        String delimiter = multiSelectDelimiter(definition);
+        if (delimiter == null) {
+            return new String[] {string};
+        }
+        return string.isEmpty() ? null : string.split(Pattern.quote(delimiter), -1);
+    }
+
+    /**
+     * @return the delimiter a multi-select or checkbox group parameter joins its selections with,
+     *         or null if the parameter has a single value
+     */
+    private static String multiSelectDelimiter(ParameterDefinition definition) {
+        Method[] accessors = definition == null ? null : MULTI_SELECT_ACCESSORS.get(definition.getClass());
+        if (accessors == null) {
+            return null;
+        }
+        try {
+            Object type = accessors[0].invoke(definition);
+            if (!"PT_MULTI_SELECT".equals(type) && !"PT_CHECKBOX".equals(type)) {
+                return null;
+            }
+            Object delimiter = accessors[1].invoke(definition);
+            return delimiter instanceof String && !((String) delimiter).isEmpty() ? (String) delimiter : null;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
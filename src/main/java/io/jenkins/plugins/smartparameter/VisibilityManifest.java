@@ -0,0 +1,169 @@
+package io.jenkins.plugins.smartparameter;
+
+import hudson.model.Job;
+import org.kohsuke.stapler.StaplerRequest;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the JSON manifest describing every conditional parameter of a build form.
+ * The client script parses it once instead of reading condition data from the DOM.
+ * The manifest also carries the initial visibility computed from default values,
+ * so the form is rendered in its final state and the client only handles changes.
+ * Entries are listed in the evaluation order of the job's {@link DependencyGraph}.
+ */
+final class VisibilityManifest {
+
+    private static final String STATE_ATTRIBUTE = VisibilityManifest.class.getName() + ".state";
+
+    /** Pause in typing after which live parameters are re-evaluated on the client. */
+    static final long LIVE_DELAY_MILLIS = Long.getLong(VisibilityManifest.class.getName() + ".liveDelayMillis", 250);
+
+    private VisibilityManifest() {
+    }
+
+    /**
+     * Renders the manifest for the job of the current request, once per request.
+     * Falls back to a manifest holding only the given parameter when no job can be found.
+     * @param request The current request, may be null
+     * @param current The parameter being rendered
+     * @return the manifest as JSON, or null if it has already been rendered in this request
+     */
+    static String renderOnce(StaplerRequest request, ConditionalParameter current) {
+        if (request == null) {
+            return build(Collections.singletonList(current), null, null).toString();
+        }
+        if (request.getAttribute(STATE_ATTRIBUTE) != null) {
+            return null;
+        }
+
+        Job<?, ?> job = request.findAncestorObject(Job.class);
+        if (job == null) {
+            return build(Collections.singletonList(current), null, null).toString();
+        }
+
+        DependencyGraph graph = DependencyGraph.forJob(job);
+        List<ConditionalParameter> parameters = graph.getEvaluationOrder();
+        if (!parameters.contains(current)) {
+            List<ConditionalParameter> withCurrent = new ArrayList<>(parameters);
+            withCurrent.add(current);
+            graph = DependencyGraph.of(withCurrent, VisibilityEvaluator.finiteDomains(job));
+            parameters = graph.getEvaluationOrder();
+        }
+
+        // Values passed in the query string (e.g. /build?ENV=prod) override the defaults
+        FormState state = new FormState(VisibilityEvaluator.initialValues(job, request.getParameterMap()));
+        state.visibility.putAll(VisibilityEvaluator.evaluate(job, graph, ControlValues.of(state.values)));
+        request.setAttribute(STATE_ATTRIBUTE, state);
+        return build(parameters, graph, state).toString();
+    }
+
+    /**
+     * Checks whether a parameter was found visible when the manifest was rendered.
+     * @param request The current request, may be null
+     * @param parameter The parameter being rendered
+     * @return false only if the parameter was evaluated as hidden
+     */
+    static boolean isInitiallyVisible(StaplerRequest request, ConditionalParameter parameter) {
+        Object state = request == null ? null : request.getAttribute(STATE_ATTRIBUTE);
+        if (!(state instanceof FormState)) {
+            return true;
+        }
+        Boolean visible = ((FormState) state).visibility.get(parameter.getName());
+        return visible == null || visible;
+    }
+
+    static JSONObject build(Collection<? extends ConditionalParameter> parameters, DependencyGraph graph,
+                            FormState state) {
+        JSONArray entries = new JSONArray();
+        for (ConditionalParameter parameter : parameters) {
+            JSONObject entry = toEntry(parameter);
+            DecisionTable table = graph == null ? null : graph.getDecisionTable(parameter);
+            if (table != null) {
+                entry.put("table", table.toJson());
+            }
+            if (state != null && state.visibility.containsKey(parameter.getName())) {
+                entry.put("visible", state.visibility.get(parameter.getName()));
+            }
+            entries.add(entry);
+        }
+        JSONObject manifest = new JSONObject();
+        manifest.put("parameters", entries);
+        manifest.put("regexBudget", RegexSupport.BUDGET_MILLIS);
+        manifest.put("liveDelay", LIVE_DELAY_MILLIS);
+        manifest.put("reorderInterval", ConditionExpression.REORDER_INTERVAL);
+        if (state != null) {
+            JSONObject values = new JSONObject();
+            for (Map.Entry<String, String[]> entry : state.values.entrySet()) {
+                String[] value = entry.getValue();
+                if (value != null && value.length > 0 && value[0] != null) {
+                    values.put(entry.getKey(), value[0]);
+                }
+            }
+            manifest.put("values", values);
+        }
+        return manifest;
+    }
+
+    private static JSONObject toEntry(ConditionalParameter parameter) {
+        JSONArray conditions = new JSONArray();
+        List<ParameterCondition> visibilityConditions = parameter.getVisibilityConditions();
+        if (visibilityConditions != null) {
+            for (ParameterCondition condition : visibilityConditions) {
+                JSONObject entry = new JSONObject();
+                entry.put("param", condition.getControlParameter());
+                entry.put("condition", condition.getCondition());
+                entry.put("value", condition.getControlValue());
+                if (ParameterCondition.MATCH_ALL.equals(condition.getMatch())) {
+                    entry.put("match", ParameterCondition.MATCH_ALL);
+                }
+                if ("regex".equals(condition.getCondition()) && condition.getControlValue() != null
+                        && RegexSupport.canBacktrack(condition.getControlValue())) {
+                    entry.put("guarded", true); // Matched by the client within the regex budget
+                }
+                conditions.add(entry);
+            }
+        }
+
+        JSONObject entry = new JSONObject();
+        entry.put("name", parameter.getName());
+        entry.put("type", parameter.getManifestType());
+        entry.put("operator", parameter.getLogicalOperator());
+        entry.put("conditions", conditions);
+        ConditionExpression expression = parameter.getConditionExpression();
+        if (expression != null) {
+            entry.put("expression", expression.toJson());
+        }
+        List<String> refs = parameter.getReferencedParameters();
+        if (!refs.isEmpty()) {
+            entry.put("refs", refs);
+        }
+        entry.put("controls", new ArrayList<>(parameter.getControlledParameters()));
+        if (parameter.isLiveUpdate()) {
+            entry.put("live", true);
+        }
+        if (parameter.isLazyRendering()) {
+            entry.put("lazy", true);
+        }
+        return entry;
+    }
+
+    /**
+     * Values and visibility decisions used to render one build form.
+     */
+    static final class FormState {
+        final Map<String, String[]> values;
+        final Map<String, Boolean> visibility = new LinkedHashMap<>();
+
+        FormState(Map<String, String[]> values) {
+            this.values = values;
+        }
+    }
+}
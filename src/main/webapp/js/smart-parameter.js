@@ -2,46 +2,237 @@
  * Enhanced JavaScript to handle smart parameter visibility
  */
 (function() {
-    console.log("Smart Parameter JS loaded");
+    // The script is included once per smart parameter; only the first copy sets anything up
+    if (window.SmartParams) {
+        return;
+    }
+
+    // Diagnostic logging, enabled in the browser console with localStorage.setItem('smartParameters.debug', 'true')
+    const DEBUG = (function() {
+        try {
+            return window.localStorage.getItem('smartParameters.debug') === 'true';
+        } catch (e) {
+            return false; // Storage can be disabled
+        }
+    })();
+
+    /**
+     * Log a diagnostic message if debugging is enabled. Never pass parameter values, which may be secrets.
+     */
+    function debug() {
+        if (DEBUG) {
+            console.log.apply(console, arguments);
+        }
+    }
+
+    debug("Smart Parameter JS loaded");
 
     // State to track parameter values
     const parameterState = {};
 
+    // Reverse index: control parameter name -> smart parameter elements depending on it
+    let dependencyIndex = {};
+
+    // Smart parameter elements that have already been indexed
+    const indexedParameters = new WeakSet();
+
+    // Visibility manifest entries by parameter name, parsed once from the server-rendered manifest
+    const manifest = {};
+
+    // Manifest elements that have already been parsed
+    const parsedManifests = new WeakSet();
+
+    // Control values the server used to compute the initial visibility
+    const initialValues = {};
+
+    // Parameter name -> manifest entries whose visibility also hides that parameter
+    const controllers = {};
+
+    // Next evaluation rank; manifest entries are listed in dependency order
+    let nextRank = 0;
+
+    // Time allowed for matching a value against a pattern that can backtrack, from the manifest
+    let regexBudget = 50;
+
+    // Worker matching guarded patterns, and the matches it has been sent but not answered
+    let regexWorker = null;
+    const pendingMatches = new Map();
+    let nextMatchId = 0;
+
+    // Evaluations of a condition group between two revisions of its order, from the manifest
+    let reorderInterval = 256;
+
+    // Pause in typing after which live dependents are re-evaluated, and the pending re-evaluation by parameter
+    let liveDelay = 250;
+    const liveTimers = new Map();
+
+    // Row visibility waiting for the next animation frame, and the visibility last applied to each row
+    const pendingRows = new Map();
+    const appliedRows = new WeakMap();
+    let frameRequested = false;
+
+    // HTML of lazily rendered wrapped parameters by fragment URL, loaded at most once per page
+    const fragments = new Map();
+
+    // Control elements and rows by parameter name, rebuilt after fields are added to or removed from the form
+    let elementIndex = null;
+
+    // Distinct values of each control parameter read during the current evaluation pass
+    const valueSets = new Map();
+
+    let initialized = false;
+
     // Execute when the DOM is fully loaded
     function initialize() {
-        console.log("Initializing smart parameters");
+        if (initialized) {
+            return;
+        }
+        initialized = true;
+        debug("Initializing smart parameters");
+
+        // Parse the visibility manifest rendered with the form
+        loadManifest(document);
 
         // Store initial parameter values
-        cacheParameterValues();
+        cacheParameterValues(document);
+
+        // Index smart parameters by the control parameters they depend on
+        buildDependencyIndex();
 
         // Initialize all smart parameters based on current values
         initSmartParameters();
 
-        // Add event listeners to all potential control parameters
-        document.querySelectorAll('input, select, textarea').forEach(function(element) {
-            element.addEventListener('change', function() {
-                console.log("Parameter changed: " + element.name);
+        // A single delegated listener on the form root handles every current and future field
+        const root = getFormRoot();
+        root.addEventListener('change', onParameterChange);
+        root.addEventListener('input', onParameterInput);
+
+        // Pick up smart parameters rendered after initialization
+        observeInsertedParameters(root);
+    }
+
+    /**
+     * Get the element that contains all build parameters
+     * @return {Element} - The parameters form, or the document body if there is none
+     */
+    function getFormRoot() {
+        const firstParam = document.querySelector('.smart-parameter');
+        return (firstParam && firstParam.closest('form')) || document.body;
+    }
+
+    /**
+     * Handle a change event delegated from any field inside the form root
+     */
+    function onParameterChange(event) {
+        const element = event.target;
+        if (!element || !element.matches('input, select, textarea')) {
+            return;
+        }
+        debug("Parameter changed: " + element.name);
+        const paramName = getParameterName(element);
+
+        // The change supersedes any live update still waiting for a pause in typing
+        clearTimeout(liveTimers.get(paramName));
+        liveTimers.delete(paramName);
+
+        // Update parameter state
+        updateParameterState(element);
+
+        // Update visibility of parameters depending on this one
+        updateDependentParameters(paramName);
+    }
+
+    /**
+     * Handle an input event delegated from any text field inside the form root. Keystrokes are
+     * coalesced per parameter: once typing pauses, only the dependents configured for live updates
+     * are evaluated, and the remaining ones follow on the change event.
+     */
+    function onParameterInput(event) {
+        const element = event.target;
+        if (!element || !element.matches('input, textarea')
+                || element.type === 'checkbox' || element.type === 'radio') {
+            return;
+        }
+        const paramName = getParameterName(element);
+        if (!hasLiveDependents(paramName)) {
+            return;
+        }
+
+        clearTimeout(liveTimers.get(paramName));
+        liveTimers.set(paramName, setTimeout(function() {
+            liveTimers.delete(paramName);
+            updateParameterState(element);
+            updateDependentParameters(paramName, true);
+        }, liveDelay));
+    }
+
+    /**
+     * Check whether any smart parameter depending on the given one is updated while typing
+     * @param {string} paramName - The name of the control parameter
+     * @return {boolean} - True if at least one dependent has live updates enabled
+     */
+    function hasLiveDependents(paramName) {
+        return (dependencyIndex[paramName] || []).some(function(param) {
+            const entry = getEntry(param);
+            return entry && entry.live;
+        });
+    }
 
-                // Update parameter state
-                updateParameterState(element);
+    /**
+     * Index and evaluate smart parameters that are added to the form after initialization, and
+     * invalidate the element index whenever fields are added or removed
+     */
+    function observeInsertedParameters(root) {
+        if (!window.MutationObserver) {
+            return;
+        }
 
-                // Update visibility of dependent parameters
-                updateSmartParameters();
+        const observer = new MutationObserver(function(mutations) {
+            const inserted = [];
+            mutations.forEach(function(mutation) {
+                mutation.addedNodes.forEach(function(node) {
+                    if (node.nodeType !== Node.ELEMENT_NODE) {
+                        return;
+                    }
+                    elementIndex = null; // Fields may have been inserted
+                    if (node.matches('.smart-parameter')) {
+                        inserted.push(node);
+                    }
+                    node.querySelectorAll('.smart-parameter').forEach(param => inserted.push(param));
+                    loadManifest(node);
+                    cacheParameterValues(node);
+                });
+                mutation.removedNodes.forEach(function(node) {
+                    if (node.nodeType === Node.ELEMENT_NODE) {
+                        elementIndex = null; // Indexed fields may have been removed
+                    }
+                });
             });
+
+            const added = inserted.filter(param => !indexedParameters.has(param));
+            if (added.length === 0) {
+                return;
+            }
+            debug("Found " + added.length + " inserted smart parameters");
+            added.forEach(indexParameter);
+            valueSets.clear();
+            added.sort((a, b) => getRank(a) - getRank(b)).forEach(updateParameterVisibility);
         });
+        observer.observe(root, { childList: true, subtree: true });
     }
 
     /**
-     * Cache the initial values of all parameters
+     * Cache the initial values of all parameters below the given root
      */
-    function cacheParameterValues() {
-        document.querySelectorAll('input, select, textarea').forEach(function(element) {
+    function cacheParameterValues(root) {
+        const elements = root.matches && root.matches('input, select, textarea') ? [root] : [];
+        elements.concat(Array.from(root.querySelectorAll('input, select, textarea'))).forEach(function(element) {
             const paramName = getParameterName(element);
             if (paramName) {
                 parameterState[paramName] = element.value;
             }
         });
-        console.log("Cached parameter values:", parameterState);
+        debug("Cached values of " + Object.keys(parameterState).length + " parameters");
     }
 
     /**
@@ -51,7 +242,7 @@
         const paramName = getParameterName(element);
         if (paramName) {
             parameterState[paramName] = element.value;
-            console.log("Updated parameter state:", paramName, "=", element.value);
+            debug("Updated parameter state: " + paramName);
         }
     }
 
@@ -81,217 +272,497 @@
     }
 
     /**
-     * Initialize all smart parameters based on current values
+     * Build the reverse index from control parameter names to the smart parameters they control.
      */
-    function initSmartParameters() {
-        var smartParams = document.querySelectorAll('.smart-parameter');
-        console.log("Found " + smartParams.length + " smart parameters");
+    function buildDependencyIndex() {
+        dependencyIndex = {};
+        document.querySelectorAll('.smart-parameter').forEach(indexParameter);
+        debug("Indexed dependencies for " + Object.keys(dependencyIndex).length + " control parameters");
+    }
 
-        // First process wrappers to ensure proper initial visibility
-        smartParams.forEach(function(param) {
-            const controlType = param.getAttribute('data-control-type');
-            if (controlType === "wrapper") {
-                updateParameterVisibility(param);
-            }
-        });
+    /**
+     * Add a single smart parameter to the reverse index
+     * @param {Element} param - The smart parameter element
+     */
+    function indexParameter(param) {
+        if (indexedParameters.has(param)) {
+            return;
+        }
+        indexedParameters.add(param);
 
-        // Then process all other parameters
-        smartParams.forEach(function(param) {
-            const controlType = param.getAttribute('data-control-type');
-            if (controlType !== "wrapper") {
-                updateParameterVisibility(param);
-            }
+        getControlParameters(param).forEach(function(controlParam) {
+            (dependencyIndex[controlParam] || (dependencyIndex[controlParam] = [])).push(param);
         });
     }
 
     /**
-     * Update all smart parameters when any input changes
+     * Parse all visibility manifests below the given root that have not been parsed yet
      */
-    function updateSmartParameters() {
-        // First process wrapper parameters
-        document.querySelectorAll('.smart-parameter').forEach(function(param) {
-            const controlType = param.getAttribute('data-control-type');
-            if (controlType === "wrapper") {
-                updateParameterVisibility(param);
+    function loadManifest(root) {
+        const elements = Array.from(root.querySelectorAll('.smart-parameter-manifest'));
+        if (root.matches && root.matches('.smart-parameter-manifest')) {
+            elements.push(root);
+        }
+
+        elements.forEach(function(element) {
+            if (parsedManifests.has(element)) {
+                return;
             }
-        });
+            parsedManifests.add(element);
 
-        // Then process regular parameters
-        document.querySelectorAll('.smart-parameter').forEach(function(param) {
-            const controlType = param.getAttribute('data-control-type');
-            if (controlType !== "wrapper") {
-                updateParameterVisibility(param);
+            try {
+                const data = JSON.parse(element.getAttribute('data-manifest'));
+                (data.parameters || []).forEach(function(entry) {
+                    if (manifest[entry.name]) {
+                        return; // Described again by the manifest of a lazily loaded fragment
+                    }
+                    (entry.conditions || []).forEach(compileCondition);
+                    if (entry.table) {
+                        entry.table.positions = entry.table.domains
+                            .map(domain => new Map(domain.map((value, i) => [value, i])));
+                    }
+                    entry.rank = nextRank++;
+                    entry.current = entry.visible;
+                    (entry.controls || [entry.name]).forEach(function(name) {
+                        (controllers[name] || (controllers[name] = [])).push(entry);
+                    });
+                    manifest[entry.name] = entry;
+                });
+                Object.assign(initialValues, data.values || {});
+                if (data.regexBudget) {
+                    regexBudget = data.regexBudget;
+                }
+                if (data.liveDelay !== undefined) {
+                    liveDelay = data.liveDelay;
+                }
+                if (data.reorderInterval !== undefined) {
+                    reorderInterval = data.reorderInterval;
+                }
+            } catch (e) {
+                console.error("Invalid smart parameter manifest", e);
             }
         });
     }
 
     /**
-     * Update the visibility of a single parameter based on its condition
-     * @param {Element} param - The parameter element to update
+     * Precompile a manifest condition: the regular expression of a regex condition,
+     * the value set of an in/notIn condition, or the matcher of a containsAny condition
+     * @param {Object} condition - The condition from the manifest
      */
-    function updateParameterVisibility(param) {
-        // Check if this is a smart wrapper parameter with multiple conditions
-        if (param.classList.contains('smart-wrapper-parameter') &&
-            param.classList.contains('multi-condition-parameter')) {
-            updateMultiConditionWrapperParameter(param);
+    function compileCondition(condition) {
+        if (!condition.value) {
             return;
         }
-
-        // Handle regular multi-condition parameters
-        const paramName = param.getAttribute('data-parameter-name');
-        if (paramName && window.smartParams && window.smartParams[paramName]) {
-            updateMultiConditionParameter(param, paramName);
-            return;
+        switch (condition.condition) {
+            case 'in':
+            case 'notIn':
+                condition.set = new Set(splitList(condition.value));
+                return;
+            case 'containsAny':
+                condition.matcher = createMultiMatcher(splitList(condition.value));
+                return;
+            case 'regex':
+                break;
+            default:
+                return;
         }
+        try {
+            condition.regex = compileRegex(condition.value);
+            if (condition.guarded) {
+                condition.results = new Map(); // Value -> match, null while pending
+            }
+        } catch (e) {
+            console.error("Invalid regex pattern:", condition.value, e);
+            condition.regex = null;
+        }
+    }
 
-        // Handle existing implementation
-        var controlType = param.getAttribute('data-control-type');
-        var controlParam = param.getAttribute('data-control-param');
-        var condition = param.getAttribute('data-condition');
-        var controlValue = param.getAttribute('data-control-value');
-
-        console.log("Updating visibility for param: control=" + controlParam + ", condition=" + condition + ", value=" + controlValue);
+    /**
+     * Split the control value of a list condition into its entries, separated by commas or new lines
+     * @param {string} controlValue - The control value
+     * @return {string[]} - The trimmed, non-blank entries
+     */
+    function splitList(controlValue) {
+        return controlValue.split(/[,\n]/).map(entry => entry.trim()).filter(entry => entry.length > 0);
+    }
 
-        if (!controlParam || !condition || !controlValue) {
-            console.log("Missing condition data, always showing");
-            return; // No condition set, always show
-        }
+    /**
+     * Build an Aho-Corasick automaton that finds any of the needles in one pass over a text
+     * @param {string[]} needles - The strings to search for
+     * @return {{containsAny: function(string): boolean}} - The matcher
+     */
+    function createMultiMatcher(needles) {
+        const next = [new Map()];
+        const terminal = [false];
+        needles.forEach(function(needle) {
+            let state = 0;
+            for (const c of needle) {
+                if (!next[state].has(c)) {
+                    next[state].set(c, next.length);
+                    next.push(new Map());
+                    terminal.push(false);
+                }
+                state = next[state].get(c);
+            }
+            terminal[state] = true;
+        });
 
-        if(controlType === "wrapper") {
-            toggleReferenceElement(param.getAttribute('data-control-ref-parameter'),
-                                   controlParam, condition, controlValue);
-            return;
+        // Failure links in breadth-first order; a state is terminal if any suffix of it is
+        const failure = new Array(next.length).fill(0);
+        const queue = Array.from(next[0].values());
+        for (let i = 0; i < queue.length; i++) {
+            const state = queue[i];
+            next[state].forEach(function(child, c) {
+                let fallback = failure[state];
+                while (fallback !== 0 && !next[fallback].has(c)) {
+                    fallback = failure[fallback];
+                }
+                const target = next[fallback].get(c);
+                failure[child] = target !== undefined && target !== child ? target : 0;
+                terminal[child] = terminal[child] || terminal[failure[child]];
+                queue.push(child);
+            });
         }
 
-        // Find the control parameter element
-        const controlElement = findControlElement(controlParam);
-        if (!controlElement) {
-            console.log("Control element not found: " + controlParam);
-            return; // Control not found, show by default
-        }
+        return {
+            containsAny: function(text) {
+                let state = 0;
+                for (const c of text) {
+                    while (state !== 0 && !next[state].has(c)) {
+                        state = failure[state];
+                    }
+                    state = next[state].get(c) || 0;
+                    if (terminal[state]) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
 
-        const currentValue = controlElement.value;
-        console.log("Control element value: " + currentValue);
+    /**
+     * Get the manifest entry describing a smart parameter element
+     * @param {Element} param - The smart parameter element
+     * @return {Object|undefined} - The manifest entry
+     */
+    function getEntry(param) {
+        return manifest[param.getAttribute('data-smart-parameter')];
+    }
 
-        let isVisible = evaluateCondition(currentValue, condition, controlValue);
+    /**
+     * Check whether a smart parameter element controls other parameters
+     */
+    function isWrapper(param) {
+        const entry = getEntry(param);
+        return !!entry && (entry.type === 'wrapper' || entry.type === 'multiConditionWrapper');
+    }
 
-        // Update visibility - find the closest parent TR if parameter is inside a table
-        const paramRow = param.closest('.jenkins-form-item') || param;
-        paramRow.style.display = isVisible ? '' : 'none';
-        console.log("Set visibility: " + isVisible + " for element");
+    /**
+     * Get the evaluation rank of a smart parameter element
+     * @param {Element} param - The smart parameter element
+     * @return {number} - The position of its entry in dependency order
+     */
+    function getRank(param) {
+        const entry = getEntry(param);
+        return entry ? entry.rank : Number.MAX_SAFE_INTEGER;
     }
 
     /**
-     * Update a parameter with multiple conditions
+     * Check whether a parameter is hidden by a smart parameter that controls it
+     * @param {string} paramName - The name of the parameter
+     * @return {boolean} - True if any controlling entry is currently hidden
      */
-    function updateMultiConditionParameter(param, paramName) {
-        const paramConfig = window.smartParams[paramName];
-        const conditions = paramConfig.conditions || [];
-        const operator = paramConfig.logicalOperator || 'AND';
+    function isHiddenParameter(paramName) {
+        return (controllers[paramName] || []).some(entry => entry.current === false);
+    }
 
-        if (conditions.length === 0) {
-            return; // No conditions to check
+    /**
+     * Get the names of all control parameters a smart parameter depends on
+     * @param {Element} param - The smart parameter element
+     * @return {string[]} - The distinct control parameter names
+     */
+    function getControlParameters(param) {
+        const entry = getEntry(param);
+        if (!entry) {
+            return [];
         }
 
-        let isVisible = operator === 'AND'; // Start with true for AND, false for OR
-
-        for (const condition of conditions) {
-            const controlParam = condition.controlParam;
-            const conditionType = condition.condition;
-            const controlValue = condition.controlValue;
-
-            if (!controlParam || !conditionType || !controlValue) {
-                continue; // Skip incomplete conditions
+        const names = new Set();
+        (entry.conditions || []).forEach(function(condition) {
+            if (condition.param) {
+                names.add(condition.param);
             }
+        });
+        return Array.from(names);
+    }
+
+    /**
+     * Update the smart parameters that depend on the given control parameter, in dependency order.
+     * When a parameter is shown or hidden, the parameters depending on the ones it controls follow
+     * in the same pass. Each parameter is evaluated at most once, which also stops at cycles.
+     * @param {string} controlParam - The name of the parameter that changed
+     * @param {boolean} [liveOnly] - Whether to start only from the direct dependents with live updates enabled
+     */
+    function updateDependentParameters(controlParam, liveOnly) {
+        if (!controlParam || !dependencyIndex[controlParam]) {
+            return; // Nothing depends on this parameter
+        }
 
-            // Get the current value of the control parameter
-            const currentValue = getParameterValue(controlParam);
-            if (currentValue === null) {
-                continue; // Control parameter not found
+        const queue = [];
+        const queued = new Set();
+        const enqueueDependents = function(name, live) {
+            (dependencyIndex[name] || []).forEach(function(param) {
+                const entry = getEntry(param);
+                if (queued.has(param) || (live && !(entry && entry.live))) {
+                    return;
+                }
+                queued.add(param);
+                const rank = getRank(param);
+                let index = queue.length;
+                while (index > 0 && getRank(queue[index - 1]) > rank) {
+                    index--;
+                }
+                queue.splice(index, 0, param);
+            });
+        };
+
+        enqueueDependents(controlParam, liveOnly);
+        valueSets.clear();
+        while (queue.length > 0) {
+            const param = queue.shift();
+            if (updateParameterVisibility(param)) {
+                const entry = getEntry(param);
+                (entry.controls || [entry.name]).forEach(name => enqueueDependents(name));
             }
+        }
+    }
 
-            const conditionResult = evaluateCondition(currentValue, conditionType, controlValue);
+    /**
+     * Initialize all smart parameters. Rows are rendered by the server in their initial state,
+     * so only parameters without a server decision and dependents of values that differ from
+     * the ones the server used (e.g. restored by the browser) are evaluated here.
+     */
+    function initSmartParameters() {
+        const smartParams = Array.from(document.querySelectorAll('.smart-parameter'));
+        debug("Found " + smartParams.length + " smart parameters");
 
-            if (operator === 'AND') {
-                isVisible = isVisible && conditionResult;
-                // Short-circuit for AND
-                if (!isVisible) break;
-            } else {
-                isVisible = isVisible || conditionResult;
-                // Short-circuit for OR
-                if (isVisible) break;
+        const undecided = [];
+        valueSets.clear();
+        smartParams.forEach(function(param) {
+            const entry = getEntry(param);
+            if (!entry || entry.visible === undefined) {
+                undecided.push(param);
+            } else if (isWrapper(param) && !entry.visible) {
+                // Referenced parameters are rendered by their own views, hide them now
+                toggleMultiReferenceParameter(entry.refs, false);
             }
-        }
+        });
+        undecided.sort((a, b) => getRank(a) - getRank(b)).forEach(updateParameterVisibility);
 
-        // Update visibility - find the closest parent form item
-        const paramRow = param.closest('.jenkins-form-item') || param;
-        paramRow.style.display = isVisible ? '' : 'none';
+        Object.keys(initialValues).forEach(function(name) {
+            if (parameterState[name] !== undefined && parameterState[name] !== initialValues[name]) {
+                updateDependentParameters(name);
+            }
+        });
     }
 
     /**
-     * Update a multi-condition wrapper parameter
+     * Update all smart parameters in dependency order
      */
-    function updateMultiConditionWrapperParameter(param) {
-        const refParameter = param.getAttribute('data-control-ref-parameter');
-        const operator = param.getAttribute('data-logical-operator') || 'AND';
+    function updateSmartParameters() {
+        valueSets.clear();
+        Array.from(document.querySelectorAll('.smart-parameter'))
+            .sort((a, b) => getRank(a) - getRank(b))
+            .forEach(updateParameterVisibility);
+    }
 
-        // Collect all condition data
-        const conditionElements = param.querySelectorAll('.condition-data');
-        if (!conditionElements || conditionElements.length === 0) {
-            return; // No conditions found
+    /**
+     * Update the visibility of a single parameter based on its manifest entry
+     * @param {Element} param - The parameter element to update
+     * @return {boolean} - True if the visibility changed
+     */
+    function updateParameterVisibility(param) {
+        const entry = getEntry(param);
+        if (!entry) {
+            return false; // Not described by the manifest, always show
         }
 
-        const conditions = [];
-        conditionElements.forEach(function(condElem) {
-            conditions.push({
-                controlParam: condElem.getAttribute('data-control-param'),
-                condition: condElem.getAttribute('data-condition'),
-                controlValue: condElem.getAttribute('data-control-value')
-            });
-        });
+        const isVisible = evaluateEntry(entry);
+        if (isVisible === null) {
+            return false; // Conditions could not be evaluated, leave as is
+        }
+        if (entry.current === isVisible) {
+            return false; // Already applied
+        }
+        entry.current = isVisible;
+
+        switch (entry.type) {
+            case 'wrapper':
+            case 'multiConditionWrapper':
+                updateWrappedParameterVisibility(param, isVisible);
+                toggleMultiReferenceParameter(entry.refs, isVisible);
+                break;
+            default: {
+                // Update visibility - find the closest parent form item
+                const paramRow = param.closest('.jenkins-form-item') || param;
+                setRowVisible(paramRow, isVisible);
+            }
+        }
+        return true;
+    }
 
+    /**
+     * Evaluate the conditions of a manifest entry
+     * @param {Object} entry - The manifest entry
+     * @return {boolean|null} - The visibility, or null if it cannot be decided
+     */
+    function evaluateEntry(entry) {
+        const conditions = entry.conditions || [];
         if (conditions.length === 0) {
-            return; // No valid conditions
+            return null; // No conditions to check
         }
 
-        // Evaluate all conditions
-        let isVisible = operator === 'AND'; // Start with true for AND, false for OR
-
-        for (const condition of conditions) {
-            const controlParam = condition.controlParam;
-            const conditionType = condition.condition;
-            const controlValue = condition.controlValue;
-
-            if (!controlParam || !conditionType || !controlValue) {
-                continue; // Skip incomplete conditions
+        if (entry.type === 'field' || entry.type === 'wrapper') {
+            const condition = conditions[0];
+            if (!condition.param || !condition.condition || !condition.value) {
+                return null; // No condition set, always show
+            }
+            if (isHiddenParameter(condition.param)) {
+                return false; // A hidden control parameter has no value
             }
+            const values = getParameterValues(condition.param);
+            if (values === null) {
+                debug("Control element not found: " + condition.param);
+                return null; // Control not found, show by default
+            }
+            return testValues(condition, values);
+        }
 
-            // Get the current value of the control parameter
-            const currentValue = getParameterValue(controlParam);
-            if (currentValue === null) {
-                continue; // Control parameter not found
+        // Parameters reading only choices have their visibility precomputed by the server
+        if (entry.table) {
+            const decided = lookupDecisionTable(entry.table);
+            if (decided !== undefined) {
+                return decided;
             }
+        }
 
-            const conditionResult = evaluateCondition(currentValue, conditionType, controlValue);
+        // Multiple conditions are evaluated as the tree compiled by the server, in the order it found
+        // cheapest for deciding the result; the tree is kept so that its groups can revise that order
+        if (!entry.tree) {
+            entry.tree = entry.expression || {
+                op: (entry.operator || 'AND').toLowerCase(),
+                children: conditions.map((condition, index) => ({ leaf: index }))
+            };
+        }
+        const isVisible = evaluateNode(entry.tree, conditions);
+        return isVisible === undefined ? null : isVisible;
+    }
 
-            if (operator === 'AND') {
-                isVisible = isVisible && conditionResult;
-                // Short-circuit for AND
-                if (!isVisible) break;
+    /**
+     * Look up visibility in the decision table the server precomputed for all combinations of choices
+     * @param {Object} table - The table from the manifest
+     * @return {boolean|undefined} - The visibility, or undefined if a value is not one of the choices
+     *         or several choices are selected
+     */
+    function lookupDecisionTable(table) {
+        let index = 0;
+        for (let i = 0; i < table.params.length; i++) {
+            const size = table.domains[i].length;
+            let position;
+            // A hidden control parameter has no value
+            const values = isHiddenParameter(table.params[i]) ? new Set() : getParameterValues(table.params[i]);
+            if (values === null || values.size > 1) {
+                return undefined; // Not rendered, or several choices selected
+            }
+            if (values.size === 0) {
+                position = size;
             } else {
-                isVisible = isVisible || conditionResult;
-                // Short-circuit for OR
-                if (isVisible) break;
+                position = table.positions[i].get(values.values().next().value);
+                if (position === undefined) {
+                    return undefined; // Not one of the choices
+                }
             }
+            index = index * (size + 1) + position;
         }
+        return table.visible.charAt(index) === '1';
+    }
 
-        // Update visibility of the wrapped parameter
-        updateWrappedParameterVisibility(param, isVisible);
+    /**
+     * Evaluate a node of a compiled condition tree, short-circuiting like the server
+     * @param {Object} node - A group, negation or leaf of the tree
+     * @param {Object[]} conditions - The conditions the leaves refer to
+     * @return {boolean|null|undefined} - The result, null while a guarded regex match is pending,
+     *         or undefined if the node cannot be evaluated and should be skipped
+     */
+    function evaluateNode(node, conditions) {
+        if (node.leaf !== undefined) {
+            const condition = conditions[node.leaf];
+            if (!condition || !condition.param || !condition.condition || !condition.value) {
+                return undefined; // Skip incomplete conditions
+            }
+            if (isHiddenParameter(condition.param)) {
+                return false; // A hidden control parameter has no value
+            }
+            const values = getParameterValues(condition.param);
+            if (values === null) {
+                return undefined; // Control parameter not found
+            }
+            return testValues(condition, values);
+        }
+
+        if (node.op === 'not') {
+            const result = evaluateNode(node.child, conditions);
+            return result === null || result === undefined ? result : !result;
+        }
 
-        // Update visibility of all referenced parameters
-        if (refParameter) {
-            toggleMultiReferenceParameter(refParameter, isVisible);
+        const and = node.op === 'and';
+        if (reorderInterval > 0 && node.children && node.children.length > 1) {
+            node.sinceReview = (node.sinceReview || 0) + 1;
+            if (node.sinceReview >= reorderInterval) {
+                node.sinceReview = 0;
+                reorderChildren(node, and);
+            }
         }
+
+        let pending = false;
+        for (const child of node.children || []) {
+            const result = evaluateNode(child, conditions);
+            child.evaluations = (child.evaluations || 0) + 1;
+            if (result === !and) {
+                child.decisive = (child.decisive || 0) + 1;
+            }
+            if (result === null) {
+                pending = true;
+            } else if (result !== undefined && result !== and) {
+                return !and; // Short-circuit: false for AND, true for OR
+            }
+        }
+        return pending ? null : and;
+    }
+
+    /**
+     * Order the children of a group by expected cost per decision, the same as the server: the cost estimated
+     * by the server divided by how often the child decided the group in this form. Conditions have no side
+     * effects and AND and OR are commutative, so the order never changes the result.
+     * @param {Object} node - The group
+     * @param {boolean} and - Whether the group is an AND group
+     */
+    function reorderChildren(node, and) {
+        const scores = node.children.map(function(child) {
+            const decisiveness = ((child.decisive || 0) + 1) / ((child.evaluations || 0) + 2);
+            // Halve the counts, so that recent evaluations weigh more than old ones, unless the child rarely
+            // runs: forgetting what it has observed would move it back to the front, as on the server
+            if ((child.evaluations || 0) >= 8) {
+                child.evaluations = Math.floor(child.evaluations / 2);
+                child.decisive = Math.floor((child.decisive || 0) / 2);
+            }
+            return (child.cost || 1) / decisiveness;
+        });
+        // Sort positions rather than children, so that ties keep their current order
+        node.children = node.children.map((child, i) => i)
+            .sort((a, b) => scores[a] - scores[b] || a - b)
+            .map(i => node.children[i]);
     }
 
     /**
@@ -299,50 +770,213 @@
      */
     function updateWrappedParameterVisibility(wrapperElement, isVisible) {
         // The wrapper itself should not be hidden, only its content and referenced parameters
-        const wrappedContent = wrapperElement.querySelector('.jenkins-form-item');
+        const wrappedContent = wrapperElement.querySelector('.smart-wrapped-content') ||
+            wrapperElement.querySelector('.jenkins-form-item');
         if (wrappedContent) {
-            wrappedContent.style.display = isVisible ? '' : 'none';
+            if (isVisible && wrappedContent.hasAttribute('data-fragment-url')) {
+                loadFragment(wrappedContent);
+            }
+            setRowVisible(wrappedContent, isVisible);
         }
     }
 
+    /**
+     * Replace the placeholder of a lazily rendered wrapped parameter with its HTML, fetched from the
+     * server the first time any wrapper with the same fragment URL is shown
+     * @param {Element} content - The wrapped content holding the placeholder
+     */
+    function loadFragment(content) {
+        const url = content.getAttribute('data-fragment-url');
+        content.removeAttribute('data-fragment-url');
+
+        if (!fragments.has(url)) {
+            fragments.set(url, fetch(url, { credentials: 'same-origin' }).then(function(response) {
+                if (!response.ok) {
+                    throw new Error("HTTP " + response.status);
+                }
+                return response.text();
+            }));
+        }
+        fragments.get(url).then(function(html) {
+            // Inserted smart parameters and values are picked up by the mutation observer
+            content.innerHTML = html;
+            runFragmentScripts(content, html, function() {
+                if (window.Behaviour) {
+                    Behaviour.applySubtree(content, true);
+                }
+            });
+        }).catch(function(e) {
+            console.error("Could not load wrapped parameter from " + url, e);
+            fragments.delete(url);
+            content.setAttribute('data-fragment-url', url); // Retry when shown again
+        });
+    }
+
+    /**
+     * Run the scripts of a fragment inserted through innerHTML, which the browser does not run by itself,
+     * the same way Jenkins runs those of render-on-demand fragments
+     * @param {Element} content - The element the fragment was inserted into
+     * @param {string} html - The HTML of the fragment
+     * @param {Function} callback - Called once the scripts have run
+     */
+    function runFragmentScripts(content, html, callback) {
+        if (typeof window.evalInnerHtmlScripts === 'function') {
+            // Loads external scripts in order before evaluating the inline ones, like renderOnDemand
+            window.evalInnerHtmlScripts(html, callback);
+            return;
+        }
+        // Outside of Jenkins pages, replace each script with a fresh element, which the browser runs
+        content.querySelectorAll('script').forEach(function(script) {
+            const fresh = document.createElement('script');
+            for (const attribute of script.attributes) {
+                fresh.setAttribute(attribute.name, attribute.value);
+            }
+            fresh.text = script.text;
+            script.replaceWith(fresh);
+        });
+        callback();
+    }
+
+    /**
+     * Show or hide a parameter row. Writes are queued and applied together in the next animation
+     * frame, so that evaluating the form never interleaves DOM reads with style changes.
+     * @param {Element} row - The row element
+     * @param {boolean} isVisible - Whether the row should be shown
+     */
+    function setRowVisible(row, isVisible) {
+        pendingRows.set(row, isVisible);
+        if (frameRequested) {
+            return;
+        }
+        frameRequested = true;
+        (window.requestAnimationFrame || (callback => setTimeout(callback, 0)))(applyRowVisibility);
+    }
+
+    /**
+     * Apply the queued row visibility, touching only rows whose visibility changed
+     */
+    function applyRowVisibility() {
+        frameRequested = false;
+        pendingRows.forEach(function(isVisible, row) {
+            const applied = appliedRows.has(row) ? appliedRows.get(row)
+                : !row.classList.contains('smart-parameter-hidden');
+            if (applied !== isVisible) {
+                row.classList.toggle('smart-parameter-hidden', !isVisible);
+            }
+            appliedRows.set(row, isVisible);
+        });
+        pendingRows.clear();
+    }
+
     /**
      * Toggle visibility of referenced parameters based on evaluated conditions
      */
     function toggleMultiReferenceParameter(refs, isVisible) {
         if (!refs) return;
 
-        const paramList = refs.split(',').map(p => p.trim());
-        for (let i = 0; i < paramList.length; i++) {
-            const paramName = paramList[i];
-            if (!paramName) continue;
-
-            // Find parameter elements by name
-            const elements = document.querySelectorAll(`div[name="parameter"] > input[name="name"][value="${paramName}"]`);
-            elements.forEach(function(element) {
-                if (element) {
-                    // Update visibility - find the closest parent TR if parameter is inside a table
-                    const paramRow = element.closest('.jenkins-form-item') || element;
-                    paramRow.style.display = isVisible ? '' : 'none';
-                    console.log(`Set visibility: ${isVisible} for referenced parameter: ${paramName}`);
-                }
-            });
+        refs.forEach(function(paramName) {
+            if (paramName) {
+                getReferenceRows(paramName).forEach(row => setRowVisible(row, isVisible));
+            }
+        });
+    }
+
+    /**
+     * Find the rows of a parameter referenced by a wrapper
+     * @param {string} paramName - The name of the referenced parameter
+     * @return {Element[]} - The rows rendering the parameter
+     */
+    function getReferenceRows(paramName) {
+        return getElementIndex().rows.get(paramName) || [];
+    }
+
+    /**
+     * Get the index of control elements and parameter rows by parameter name. It is built with one pass
+     * per lookup pattern and kept until the mutation observer sees elements added or removed.
+     * @return {{controls: Map<string, Element>, rows: Map<string, Element[]>}} - The index
+     */
+    function getElementIndex() {
+        if (elementIndex && window.MutationObserver) {
+            return elementIndex;
         }
+
+        // Patterns in lookup priority order; the first element in document order wins
+        const controls = new Map();
+        const rows = new Map();
+        document.querySelectorAll('[name]').forEach(function(element) {
+            const name = element.getAttribute('name');
+            if (!controls.has(name)) {
+                controls.set(name, element);
+            }
+        });
+        document.querySelectorAll('[data-parameter-name]').forEach(function(element) {
+            const name = element.getAttribute('data-parameter-name');
+            if (!controls.has(name)) {
+                controls.set(name, element);
+            }
+        });
+        document.querySelectorAll('div[name="parameter"] > input[name="name"]').forEach(function(element) {
+            const name = element.value;
+            if (!controls.has(name) && element.nextElementSibling) {
+                controls.set(name, element.nextElementSibling); // The value input follows the name
+            }
+            (rows.get(name) || rows.set(name, []).get(name)).push(element.closest('.jenkins-form-item') || element);
+        });
+
+        elementIndex = { controls: controls, rows: rows };
+        return elementIndex;
     }
 
     /**
-     * Get the current value of a parameter
+     * Get the distinct current values of a parameter, read once per evaluation pass
      * @param {string} paramName - The name of the parameter
-     * @return {string|null} - The parameter value or null if not found
+     * @return {Set<string>|null} - The parameter values, several for multi-selects and checkbox groups,
+     *         or null if not found
      */
-    function getParameterValue(paramName) {
-        // First check our cached parameter state
-        if (parameterState && parameterState[paramName] !== undefined) {
-            return parameterState[paramName];
+    function getParameterValues(paramName) {
+        if (valueSets.has(paramName)) {
+            return valueSets.get(paramName);
         }
 
-        // Find the parameter input element
+        // Read the field itself, so that values typed since the last change event are seen too
         const element = findControlElement(paramName);
-        return element ? element.value : null;
+        let values = null;
+        if (element) {
+            values = new Set(readControlValues(element));
+        } else if (parameterState[paramName] !== undefined) {
+            // Fall back to the last value seen, for fields that are no longer in the form
+            values = new Set([parameterState[paramName]]);
+        }
+        valueSets.set(paramName, values);
+        return values;
+    }
+
+    /**
+     * Get the first current value of a parameter, for scripts written before multi-valued parameters were supported
+     * @param {string} paramName - The name of the parameter
+     * @return {string|null} - The first value, or null if not found or nothing is selected
+     */
+    function getParameterValue(paramName) {
+        const values = getParameterValues(paramName);
+        return values && values.size > 0 ? values.values().next().value : null;
+    }
+
+    /**
+     * Read all values of a control element
+     * @param {Element} element - The control element
+     * @return {string[]} - The selected options of a multi-select, the checked boxes of a checkbox group,
+     *         or the value of any other field
+     */
+    function readControlValues(element) {
+        if (element.tagName === 'SELECT' && element.multiple) {
+            return Array.from(element.selectedOptions, option => option.value);
+        }
+        const container = element.closest('div[name="parameter"]');
+        const boxes = container ? container.querySelectorAll('input[type="checkbox"]') : [];
+        if (boxes.length > 1) {
+            return Array.from(boxes).filter(box => box.checked).map(box => box.value);
+        }
+        return [element.value];
     }
 
     /**
@@ -351,69 +985,159 @@
      * @return {Element|null} - The input element or null if not found
      */
     function findControlElement(paramName) {
-        // Try to find by name attribute
-        let element = document.querySelector(`[name="${paramName}"]`);
+        return getElementIndex().controls.get(paramName) || null;
+    }
 
-        // If not found, try by data-parameter-name attribute
-        if (!element) {
-            element = document.querySelector(`[data-parameter-name="${paramName}"]`);
+    /**
+     * Evaluate a manifest condition against the values of a control parameter, the same as the server:
+     * a multi-valued parameter meets the condition if any value does, or every value with "all" matching
+     * @param {Object} condition - The condition from the manifest
+     * @param {Set<string>} values - The distinct current values
+     * @return {boolean|null} - True if the condition is met, or null while a guarded match is pending
+     */
+    function testValues(condition, values) {
+        if (values.size === 0) {
+            return false; // Nothing selected
         }
-
-        // If not found, try with common Jenkins parameter patterns
-        if (!element) {
-            element = document.querySelector(`input[name="value"][data-parameter-name="${paramName}"]`);
+        if (values.size === 1) {
+            return testCondition(condition, values.values().next().value);
         }
 
-        if (!element) {
-            element = document.querySelector(`select[name="value"][data-parameter-name="${paramName}"]`);
+        const all = condition.match === 'all';
+        let pending = false;
+        for (const value of values) {
+            const result = testCondition(condition, value);
+            if (result === null) {
+                pending = true;
+            } else if (result !== all) {
+                return !all; // Short-circuit: true for any, false for all
+            }
         }
+        return pending ? null : all;
+    }
+
+    /**
+     * Compile a regex condition's pattern so that it must match the whole value, as on the server,
+     * which uses Matcher.matches(): pattern "prod" does not match "production"
+     * @param {string} pattern - The configured pattern
+     * @return {RegExp} - The anchored expression
+     */
+    function compileRegex(pattern) {
+        return new RegExp('^(?:' + pattern + ')$');
+    }
 
-        if (!element) {
-            // Try name="parameter" pattern
-            element = document.querySelector(`div[name="parameter"] > input[name="name"][value="${paramName}"]`);
-            if (element) {
-                // If found, get the associated value input
-                return element.nextElementSibling;
+    /**
+     * Evaluate a manifest condition, using its precompiled regular expression
+     * @param {Object} condition - The condition from the manifest
+     * @param {string} value - The current value
+     * @return {boolean|null} - True if the condition is met, or null while a guarded match is pending
+     */
+    function testCondition(condition, value) {
+        if (condition.condition === 'regex') {
+            if (!condition.regex) {
+                return false;
             }
+            return condition.guarded ? testGuardedRegex(condition, value) : condition.regex.test(value);
         }
-
-        return element;
+        switch (condition.condition) {
+            case 'in':
+                return condition.set.has(value);
+            case 'notIn':
+                return !condition.set.has(value);
+            case 'containsAny':
+                return condition.matcher.containsAny(value);
+        }
+        return evaluateCondition(value, condition.condition, condition.value);
     }
 
     /**
-     * Toggle visibility of reference elements
+     * Match a value against a pattern the server marked as able to backtrack catastrophically.
+     * The match runs in a worker that is terminated once it exceeds the regex budget, in which
+     * case the value counts as not matching, the same as on the server. Parameters are updated
+     * again when the result arrives. Without workers, guarded patterns never match.
+     * @param {Object} condition - The guarded regex condition
+     * @param {string} value - The current value
+     * @return {boolean|null} - The cached result, or null while it is pending
      */
-    function toggleReferenceElement(params, controlParam, condition, controlValue) {
-        if (!params) return;
+    function testGuardedRegex(condition, value) {
+        if (condition.results.has(value)) {
+            return condition.results.get(value);
+        }
+        if (!window.Worker || !window.Blob || !window.URL) {
+            // Matching could not be interrupted here, so the pattern counts as not matching, as on the
+            // server once the budget runs out, rather than risk freezing the page
+            debug("No worker to match a guarded pattern, treating it as not matching: " + condition.value);
+            condition.results.set(value, false);
+            return false;
+        }
 
-        const paramList = params.split(',').map(p => p.trim());
-        for (let i = 0; i < paramList.length; i++) {
-            const paramName = paramList[i];
-            if (!paramName) continue;
+        condition.results.set(value, null);
+        const id = nextMatchId++;
+        pendingMatches.set(id, { id: id, pattern: condition.value, value: value, condition: condition });
+        getRegexWorker().postMessage({ id: id, pattern: condition.value, value: value });
+        return null;
+    }
 
-            // Find all matching elements (there could be multiple with the same name)
-            const elements = document.querySelectorAll(`div[name="parameter"] > input[name="name"][value="${paramName}"]`);
-            elements.forEach(function(element) {
-                if (element) {
-                    // Find the control parameter element
-                    const controlElement = findControlElement(controlParam);
-                    if (!controlElement) {
-                        console.log("Control element not found: " + controlParam);
-                        return; // Control not found, show by default
-                    }
+    /**
+     * Get the worker matching guarded patterns, starting it if needed
+     * @return {Worker} - The worker
+     */
+    function getRegexWorker() {
+        if (regexWorker) {
+            return regexWorker;
+        }
 
-                    const currentValue = controlElement.value;
-                    console.log("Control element value: " + currentValue);
+        const source = "onmessage = function(e) {" +
+            " postMessage({ id: e.data.id, started: true });" +
+            " let matched = false;" +
+            " try { matched = new RegExp('^(?:' + e.data.pattern + ')$').test(e.data.value); } catch (err) {}" +
+            " postMessage({ id: e.data.id, matched: matched });" +
+            "};";
+        const url = URL.createObjectURL(new Blob([source], { type: 'application/javascript' }));
+        regexWorker = new Worker(url);
+        URL.revokeObjectURL(url);
+
+        let timer = null;
+        regexWorker.onmessage = function(event) {
+            const match = pendingMatches.get(event.data.id);
+            if (!match) {
+                return;
+            }
+            if (event.data.started) {
+                // The budget starts when matching does, not when the match is queued
+                timer = setTimeout(function() {
+                    console.error("Regex pattern exceeded its " + regexBudget + " ms budget:", match.pattern);
+                    pendingMatches.delete(match.id);
+                    restartRegexWorker();
+                    finishMatch(match, false);
+                }, regexBudget);
+                return;
+            }
+            clearTimeout(timer);
+            finishMatch(match, event.data.matched);
+        };
+        return regexWorker;
+    }
 
-                    let isVisible = evaluateCondition(currentValue, condition, controlValue);
+    /**
+     * Terminate a worker stuck on a pattern and resend the matches still queued on it
+     */
+    function restartRegexWorker() {
+        regexWorker.terminate();
+        regexWorker = null;
+        const worker = getRegexWorker();
+        pendingMatches.forEach(function(match) {
+            worker.postMessage({ id: match.id, pattern: match.pattern, value: match.value });
+        });
+    }
 
-                    // Update visibility - find the closest parent TR if parameter is inside a table
-                    const paramRow = element.closest('.jenkins-form-item') || element;
-                    paramRow.style.display = isVisible ? '' : 'none';
-                    console.log("Set visibility: " + isVisible + " for element: " + paramName);
-                }
-            });
-        }
+    /**
+     * Record the result of a guarded match and re-evaluate the form with it
+     */
+    function finishMatch(match, matched) {
+        pendingMatches.delete(match.id);
+        match.condition.results.set(match.value, matched);
+        updateSmartParameters();
     }
 
     /**
@@ -435,10 +1159,15 @@
                 return value.startsWith(controlValue);
             case 'endsWith':
                 return value.endsWith(controlValue);
+            case 'in':
+                return splitList(controlValue).includes(value);
+            case 'notIn':
+                return !splitList(controlValue).includes(value);
+            case 'containsAny':
+                return splitList(controlValue).some(needle => value.includes(needle));
             case 'regex':
                 try {
-                    const regex = new RegExp(controlValue);
-                    return regex.test(value);
+                    return compileRegex(controlValue).test(value);
                 } catch (e) {
                     console.error("Invalid regex pattern:", controlValue, e);
                     return false;
@@ -448,18 +1177,19 @@
         }
     }
 
-    // Add to window onload to ensure all elements are loaded first
-    if (document.readyState === "complete" || document.readyState === "interactive") {
-        setTimeout(initialize, 100);
-    } else {
+    // Initialize once, as soon as the DOM is ready
+    if (document.readyState === "loading") {
         window.addEventListener("DOMContentLoaded", initialize);
+    } else {
+        initialize();
     }
-    window.addEventListener("load", initialize);
 
     // Make some functions available globally for diagnostics and advanced usage
     window.SmartParams = {
         updateParameters: updateSmartParameters,
+        updateDependents: updateDependentParameters,
         getParameterValue: getParameterValue,
+        getParameterValues: getParameterValues,
         evaluateCondition: evaluateCondition
     };
 })();
\ No newline at end of file
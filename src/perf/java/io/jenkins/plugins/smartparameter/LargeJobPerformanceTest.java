@@ -0,0 +1,200 @@
+package io.jenkins.plugins.smartparameter;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.Items;
+import hudson.model.Job;
+import hudson.model.ParameterDefinition;
+import hudson.model.ParametersDefinitionProperty;
+import org.htmlunit.HttpMethod;
+import org.htmlunit.WebRequest;
+import org.htmlunit.WebResponse;
+import org.htmlunit.util.NameValuePair;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Load tests for jobs with thousands of smart parameters: build page rendering time and size, configuration
+ * save and load time, and build submission time. Each measurement is the best of {@link #RUNS} runs and is
+ * logged with its limit, a fixed allowance plus an allowance per parameter. Until the limits are calibrated, a
+ * measurement above its limit is only logged as a warning; with
+ * {@code -Dio.jenkins.plugins.smartparameter.perf.enforce=true} it fails the build. The allowances can be raised
+ * for slow machines with {@code -Dio.jenkins.plugins.smartparameter.perf.scale=FACTOR}.
+ */
+@RunWith(Parameterized.class)
+public class LargeJobPerformanceTest {
+
+    private static final Logger LOGGER = Logger.getLogger(LargeJobPerformanceTest.class.getName());
+
+    private static final int RUNS = 3;
+    private static final double SCALE =
+            Double.parseDouble(System.getProperty("io.jenkins.plugins.smartparameter.perf.scale", "1"));
+    private static final boolean ENFORCE = Boolean.getBoolean("io.jenkins.plugins.smartparameter.perf.enforce");
+
+    // Estimates, not yet calibrated against measurements on the CI agents, so only enforced on request
+    private static final Threshold RENDER_MILLIS = new Threshold("render", 1_000, 2);
+    private static final Threshold HTML_BYTES = new Threshold("html", 200_000, 3_000);
+    private static final Threshold SAVE_MILLIS = new Threshold("save", 500, 0.5);
+    private static final Threshold LOAD_MILLIS = new Threshold("load", 500, 0.5);
+    private static final Threshold SUBMIT_MILLIS = new Threshold("submit", 500, 1);
+
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    @Parameterized.Parameter(0)
+    public String jobType;
+
+    @Parameterized.Parameter(1)
+    public int parameterCount;
+
+    @Parameterized.Parameters(name = "{0} job, {1} parameters")
+    public static Collection<Object[]> sizes() {
+        List<Object[]> sizes = new ArrayList<>();
+        for (String jobType : new String[] {"freestyle", "pipeline"}) {
+            for (int parameterCount : new int[] {100, 1_000, 5_000}) {
+                sizes.add(new Object[] {jobType, parameterCount});
+            }
+        }
+        return sizes;
+    }
+
+    @Test
+    public void buildPage() throws Exception {
+        Job<?, ?> job = createJob();
+        JenkinsRule.WebClient wc = createWebClient();
+
+        long best = Long.MAX_VALUE;
+        String html = null;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            WebResponse response = wc.goTo(job.getUrl() + "build?delay=0sec").getWebResponse();
+            best = Math.min(best, elapsedMillis(start));
+            html = response.getContentAsString();
+        }
+
+        assertThat(html, containsString("smart-parameter-manifest"));
+        RENDER_MILLIS.check(parameterCount, best);
+        HTML_BYTES.check(parameterCount, html.length());
+    }
+
+    @Test
+    public void configurationRoundTrip() throws Exception {
+        Job<?, ?> job = createJob();
+
+        long bestSave = Long.MAX_VALUE;
+        long bestLoad = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            job.save();
+            bestSave = Math.min(bestSave, elapsedMillis(start));
+
+            start = System.nanoTime();
+            Job<?, ?> loaded = (Job<?, ?>) Items.load(r.jenkins, job.getRootDir());
+            bestLoad = Math.min(bestLoad, elapsedMillis(start));
+
+            ParametersDefinitionProperty property = loaded.getProperty(ParametersDefinitionProperty.class);
+            assertEquals(parameterCount, property.getParameterDefinitions().size());
+        }
+
+        SAVE_MILLIS.check(parameterCount, bestSave);
+        LOAD_MILLIS.check(parameterCount, bestLoad);
+    }
+
+    @Test
+    public void buildSubmission() throws Exception {
+        Job<?, ?> job = createJob();
+        List<ParameterDefinition> parameters =
+                job.getProperty(ParametersDefinitionProperty.class).getParameterDefinitions();
+        String form = LargeJobs.form(parameters).toString();
+        JenkinsRule.WebClient wc = createWebClient();
+
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            // A long delay keeps the build in the queue, so only value creation and scheduling are timed
+            WebRequest request = new WebRequest(wc.createCrumbedUrl(job.getUrl() + "build?delay=3600sec"),
+                    HttpMethod.POST);
+            request.setRequestParameters(Collections.singletonList(new NameValuePair("json", form)));
+
+            long start = System.nanoTime();
+            WebResponse response = wc.loadWebResponse(request);
+            best = Math.min(best, elapsedMillis(start));
+
+            assertThat("build submission status", response.getStatusCode(), lessThan(400));
+            r.jenkins.getQueue().clear();
+        }
+
+        SUBMIT_MILLIS.check(parameterCount, best);
+    }
+
+    private Job<?, ?> createJob() throws Exception {
+        ParametersDefinitionProperty property =
+                new ParametersDefinitionProperty(LargeJobs.parameters(parameterCount));
+        if ("pipeline".equals(jobType)) {
+            WorkflowJob job = r.createProject(WorkflowJob.class, "pipeline");
+            job.addProperty(property);
+            return job;
+        }
+        FreeStyleProject job = r.createFreeStyleProject("freestyle");
+        job.addProperty(property);
+        return job;
+    }
+
+    private JenkinsRule.WebClient createWebClient() {
+        // Server-side cost only: the client script is measured by the browser, not here
+        JenkinsRule.WebClient wc = r.createWebClient();
+        wc.getOptions().setJavaScriptEnabled(false);
+        wc.getOptions().setRedirectEnabled(false);
+        wc.getOptions().setThrowExceptionOnFailingStatusCode(false);
+        return wc;
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Upper bound of a measurement: a fixed allowance plus an allowance per parameter.
+     */
+    private static final class Threshold {
+        private final String name;
+        private final long base;
+        private final double perParameter;
+
+        Threshold(String name, long base, double perParameter) {
+            this.name = name;
+            this.base = base;
+            this.perParameter = perParameter;
+        }
+
+        void check(int parameterCount, long measured) {
+            long limit = (long) ((base + perParameter * parameterCount) * SCALE);
+            String measurement = name + " with " + parameterCount + " parameters";
+            if (measured > limit && !ENFORCE) {
+                LOGGER.log(Level.WARNING, "{0}: {1} exceeds the uncalibrated limit {2}",
+                        new Object[] {measurement, measured, limit});
+            } else {
+                LOGGER.log(Level.INFO, "{0}: {1} (limit {2})", new Object[] {measurement, measured, limit});
+            }
+            if (ENFORCE) {
+                assertThat(measurement, measured, lessThanOrEqualTo(limit));
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package io.jenkins.plugins.smartparameter;
+
+import hudson.model.ParameterDefinition;
+import hudson.model.StringParameterDefinition;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parameter sets of the size of the largest jobs in production, shared by the load tests.
+ * Every generated job has {@link #CONTROL_PARAMETERS} plain string parameters followed by smart
+ * parameters cycling through all four types, each with conditions on the control parameters.
+ */
+final class LargeJobs {
+
+    /** Number of plain string parameters the generated conditions read. */
+    static final int CONTROL_PARAMETERS = 16;
+
+    private LargeJobs() {
+    }
+
+    static String controlParameter(int index) {
+        return "CONTROL_" + (index % CONTROL_PARAMETERS);
+    }
+
+    static String controlValue(int index) {
+        return "value-" + (index % CONTROL_PARAMETERS);
+    }
+
+    /**
+     * Generates the parameters of a job.
+     * @param count The total number of parameters, control parameters included
+     */
+    static List<ParameterDefinition> parameters(int count) {
+        List<ParameterDefinition> parameters = new ArrayList<>(count);
+        for (int i = 0; i < CONTROL_PARAMETERS; i++) {
+            parameters.add(new StringParameterDefinition(controlParameter(i), controlValue(i), "control"));
+        }
+        for (int i = CONTROL_PARAMETERS; i < count; i++) {
+            parameters.add(smartParameter(i));
+        }
+        return parameters;
+    }
+
+    private static ParameterDefinition smartParameter(int index) {
+        String name = "SMART_" + index;
+        switch (index % 4) {
+            case 0: {
+                SmartParameterDefinition parameter = new SmartParameterDefinition(name, "load test", "default");
+                parameter.setControlParameter(controlParameter(index));
+                parameter.setCondition("equals");
+                parameter.setControlValue(controlValue(index));
+                return parameter;
+            }
+            case 1: {
+                MultiConditionParameterDefinition parameter =
+                        new MultiConditionParameterDefinition(name, "load test", "default");
+                parameter.setConditions(conditions(index));
+                parameter.setLogicalOperator(index % 8 == 1 ? "AND" : "OR");
+                return parameter;
+            }
+            case 2: {
+                SmartWrapperParameterDefinition wrapper = new SmartWrapperParameterDefinition(name, "load test");
+                wrapper.setWrappedParameter(new StringParameterDefinition(name, "default", "wrapped"));
+                wrapper.setControlParameter(controlParameter(index));
+                wrapper.setCondition("startsWith");
+                wrapper.setControlValue("value-");
+                return wrapper;
+            }
+            default: {
+                MultiConditionWrapperDefinition wrapper = new MultiConditionWrapperDefinition(name, "load test");
+                wrapper.setWrappedParameter(new StringParameterDefinition(name, "default", "wrapped"));
+                wrapper.setConditions(conditions(index));
+                wrapper.setLogicalOperator("AND");
+                return wrapper;
+            }
+        }
+    }
+
+    private static List<ParameterCondition> conditions(int index) {
+        return Arrays.asList(
+                new ParameterCondition(controlParameter(index), "equals", controlValue(index)),
+                new ParameterCondition(controlParameter(index + 1), "contains", "-"),
+                new ParameterCondition(controlParameter(index + 2), "regex", "value-\\d+"));
+    }
+
+    /**
+     * Builds the JSON the build form submits, with a value for every parameter.
+     */
+    static JSONObject form(List<ParameterDefinition> parameters) {
+        JSONArray values = new JSONArray();
+        for (ParameterDefinition parameter : parameters) {
+            JSONObject value = new JSONObject();
+            value.put("name", parameter.getName());
+            value.put("value", parameter.getName().startsWith("CONTROL_") ? "value-0" : "submitted");
+            values.add(value);
+        }
+        JSONObject form = new JSONObject();
+        form.put("parameter", values);
+        return form;
+    }
+}
@@ -0,0 +1,63 @@
+package io.jenkins.plugins.smartparameter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AhoCorasickTest {
+
+    @Test
+    public void findsNeedlesThatOverlap() {
+        AhoCorasick matcher = new AhoCorasick(Arrays.asList("he", "she", "his", "hers"));
+        assertTrue(matcher.containsAny("ushers"));
+        assertTrue(matcher.containsAny("this"));
+        assertFalse(matcher.containsAny("hi s"));
+    }
+
+    @Test
+    public void findsNeedlesThatAreSuffixesOfAPartialMatch() {
+        // "abd" fails after "ab", and "bc" has to be found through the failure link of "ab"
+        AhoCorasick matcher = new AhoCorasick(Arrays.asList("abd", "bc"));
+        assertTrue(matcher.containsAny("abc"));
+        assertFalse(matcher.containsAny("abb"));
+    }
+
+    @Test
+    public void ignoresEmptyNeedles() {
+        assertFalse(new AhoCorasick(Collections.singletonList("")).containsAny("anything"));
+        assertFalse(new AhoCorasick(Collections.emptyList()).containsAny("anything"));
+    }
+
+    @Test
+    public void agreesWithSearchingEachNeedle() {
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+            List<String> needles = new ArrayList<>();
+            for (int i = random.nextInt(6); i >= 0; i--) {
+                needles.add(randomString(random, 1 + random.nextInt(4)));
+            }
+            AhoCorasick matcher = new AhoCorasick(needles);
+            for (int i = 0; i < 20; i++) {
+                String text = randomString(random, random.nextInt(12));
+                boolean expected = needles.stream().anyMatch(text::contains);
+                assertEquals(needles + " in " + text, expected, matcher.containsAny(text));
+            }
+        }
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append((char) ('a' + random.nextInt(3)));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,142 @@
+package io.jenkins.plugins.smartparameter;
+
+import hudson.model.ChoiceParameterDefinition;
+import hudson.model.FreeStyleProject;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.StringParameterDefinition;
+import org.htmlunit.html.DomElement;
+import org.htmlunit.html.HtmlPage;
+import org.htmlunit.html.HtmlSelect;
+import org.htmlunit.html.HtmlTextInput;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Uses the build form in a browser with JavaScript enabled.
+ */
+public class BuildFormTest {
+
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    @Test
+    public void conditionShowsAndHidesParameter() throws Exception {
+        FreeStyleProject project = createProject();
+        JenkinsRule.WebClient wc = r.createWebClient();
+        HtmlPage page = wc.goTo(project.getUrl() + "build?delay=0sec");
+        assertFalse("visible for the default value", isVisible(page));
+
+        HtmlSelect env = page.querySelector("select[name='value']");
+        env.setSelectedAttribute("prod", true);
+        wc.waitForBackgroundJavaScript(5_000);
+        assertTrue("hidden after selecting prod", isVisible(page));
+
+        env.setSelectedAttribute("dev", true);
+        wc.waitForBackgroundJavaScript(5_000);
+        assertFalse("visible after selecting dev", isVisible(page));
+    }
+
+    @Test
+    public void clientMatchesRegexLikeServer() throws Exception {
+        SmartParameterDefinition target = new SmartParameterDefinition("TARGET", "", "safe");
+        target.setControlParameter("ENV");
+        target.setCondition("regex");
+        target.setControlValue("prod");
+
+        FreeStyleProject project = r.createFreeStyleProject();
+        project.addProperty(new ParametersDefinitionProperty(
+                new StringParameterDefinition("ENV", "production", ""), target));
+        JenkinsRule.WebClient wc = r.createWebClient();
+        HtmlPage page = wc.goTo(project.getUrl() + "build?delay=0sec");
+        // The pattern must match the whole value, so the server renders the parameter hidden
+        assertFalse("rendered visible for a partial match", isVisible(page));
+
+        HtmlTextInput env = page.querySelector("input[name='value']");
+        env.fireEvent("change");
+        wc.waitForBackgroundJavaScript(5_000);
+        assertFalse("shown by the client for a partial match", isVisible(page));
+
+        env.setValue("prod");
+        env.fireEvent("change");
+        wc.waitForBackgroundJavaScript(5_000);
+        assertTrue("hidden for a full match", isVisible(page));
+    }
+
+    @Test
+    public void clientMatchesContainsAnyLikeServer() throws Exception {
+        List<String> needles = Arrays.asList("he", "she", "his", "hers");
+        SmartParameterDefinition target = new SmartParameterDefinition("TARGET", "", "safe");
+        target.setControlParameter("ENV");
+        target.setCondition("containsAny");
+        target.setControlValue(String.join(",", needles));
+
+        FreeStyleProject project = r.createFreeStyleProject();
+        project.addProperty(new ParametersDefinitionProperty(
+                new StringParameterDefinition("ENV", "", ""), target));
+        JenkinsRule.WebClient wc = r.createWebClient();
+        HtmlPage page = wc.goTo(project.getUrl() + "build?delay=0sec");
+        HtmlTextInput env = page.querySelector("input[name='value']");
+
+        AhoCorasick server = new AhoCorasick(needles);
+        for (String value : new String[] {"ushers", "this", "hi s", "abc", "sh", "hershe"}) {
+            env.setValue(value);
+            env.fireEvent("change");
+            wc.waitForBackgroundJavaScript(5_000);
+            assertEquals(value, server.containsAny(value), isVisible(page));
+        }
+    }
+
+    @Test
+    public void scriptIsLoadedOnce() throws Exception {
+        SmartParameterDefinition other = new SmartParameterDefinition("OTHER", "", "");
+        other.setControlParameter("ENV");
+        other.setCondition("equals");
+        other.setControlValue("dev");
+
+        SmartParameterDefinition target = new SmartParameterDefinition("TARGET", "", "safe");
+        target.setControlParameter("ENV");
+        target.setCondition("equals");
+        target.setControlValue("prod");
+
+        FreeStyleProject project = r.createFreeStyleProject();
+        project.addProperty(new ParametersDefinitionProperty(
+                new ChoiceParameterDefinition("ENV", new String[] {"dev", "prod"}, ""), target, other));
+
+        HtmlPage page = r.createWebClient().goTo(project.getUrl() + "build?delay=0sec");
+        assertEquals(1, page.querySelectorAll("script[src$='/smart-parameter.js']").size());
+        assertEquals(1, page.querySelectorAll(".smart-parameter-manifest").size());
+    }
+
+    private FreeStyleProject createProject() throws Exception {
+        SmartParameterDefinition target = new SmartParameterDefinition("TARGET", "", "safe");
+        target.setControlParameter("ENV");
+        target.setCondition("equals");
+        target.setControlValue("prod");
+
+        FreeStyleProject project = r.createFreeStyleProject();
+        project.addProperty(new ParametersDefinitionProperty(
+                new ChoiceParameterDefinition("ENV", new String[] {"dev", "prod"}, ""), target));
+        return project;
+    }
+
+    private static boolean isVisible(HtmlPage page) {
+        DomElement parameter = page.querySelector("[data-smart-parameter='TARGET']");
+        assertNotNull("parameter not rendered", parameter);
+        for (DomElement row = parameter; row != null; row = row.getParentNode() instanceof DomElement
+                ? (DomElement) row.getParentNode() : null) {
+            if (row.getAttribute("class").contains("smart-parameter-hidden")) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,186 @@
+package io.jenkins.plugins.smartparameter;
+
+import hudson.util.FormValidation;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class ConditionExpressionTest {
+
+    @Test
+    public void andBindsTighterThanOr() throws Exception {
+        ConditionExpression expression = ConditionExpression.parse("A == x OR B == x AND C == x");
+        for (int bits = 0; bits < 8; bits++) {
+            boolean a = (bits & 1) != 0;
+            boolean b = (bits & 2) != 0;
+            boolean c = (bits & 4) != 0;
+            Map<String, String[]> values = new HashMap<>();
+            values.put("A", new String[] {a ? "x" : "y"});
+            values.put("B", new String[] {b ? "x" : "y"});
+            values.put("C", new String[] {c ? "x" : "y"});
+            assertEquals("A=" + a + " B=" + b + " C=" + c, a || b && c,
+                    expression.evaluate(ControlValues.of(values)));
+        }
+    }
+
+    @Test
+    public void parenthesesOverridePrecedence() throws Exception {
+        ConditionExpression expression = ConditionExpression.parse("(A == x OR B == x) AND C == x");
+        assertFalse(expression.evaluate(values("A", "x", "B", "y", "C", "y")));
+        assertTrue(expression.evaluate(values("A", "y", "B", "x", "C", "x")));
+    }
+
+    @Test
+    public void notBindsTighterThanAnd() throws Exception {
+        ConditionExpression expression = ConditionExpression.parse("NOT A == x AND B == x");
+        assertTrue(expression.evaluate(values("A", "y", "B", "x")));
+        assertFalse(expression.evaluate(values("A", "x", "B", "x")));
+        assertFalse(expression.evaluate(values("A", "y", "B", "y")));
+    }
+
+    @Test
+    public void keywordsAndSymbolsAreEquivalent() throws Exception {
+        ConditionExpression words = ConditionExpression.parse("a == x and not (b == x or c == x)");
+        ConditionExpression symbols = ConditionExpression.parse("a = x && !(b == x || c == x)");
+        for (String b : new String[] {"x", "y"}) {
+            ControlValues values = values("a", "x", "b", b, "c", "y");
+            assertEquals(words.evaluate(values), symbols.evaluate(values));
+        }
+    }
+
+    @Test
+    public void quotedValuesKeepSpacesOperatorsAndKeywords() throws Exception {
+        assertTrue(ConditionExpression.parse("A == 'two words'").evaluate(values("A", "two words")));
+        assertTrue(ConditionExpression.parse("A == \"f(x) == 1\"").evaluate(values("A", "f(x) == 1")));
+        assertTrue(ConditionExpression.parse("A == 'AND'").evaluate(values("A", "AND")));
+        assertTrue(ConditionExpression.parse("A == 'it\\'s'").evaluate(values("A", "it's")));
+        assertTrue(ConditionExpression.parse("A in 'dev, qa'").evaluate(values("A", "qa")));
+    }
+
+    @Test
+    public void operatorsMapToConditions() throws Exception {
+        assertTrue(ConditionExpression.parse("A != x").evaluate(values("A", "y")));
+        assertTrue(ConditionExpression.parse("A =~ 'v[0-9]+'").evaluate(values("A", "v12")));
+        assertTrue(ConditionExpression.parse("A startsWith eu").evaluate(values("A", "eu-west")));
+        assertTrue(ConditionExpression.parse("A notIn 'a,b'").evaluate(values("A", "c")));
+    }
+
+    @Test
+    public void missingValueNeverMeetsCondition() throws Exception {
+        assertFalse(ConditionExpression.parse("A != x").evaluate(values()));
+        assertTrue(ConditionExpression.parse("NOT A == x").evaluate(values()));
+    }
+
+    @Test
+    public void anyMatchesIfOneValueDoes() throws Exception {
+        ControlValues values = name -> "F".equals(name) ? new String[] {"b", "a"} : null;
+        assertTrue(ConditionExpression.parse("F == a").evaluate(values));
+        assertTrue(ConditionExpression.parse("any(F) == a").evaluate(values));
+        assertFalse(ConditionExpression.parse("any(F) == c").evaluate(values));
+    }
+
+    @Test
+    public void allMatchesIfEveryValueDoes() throws Exception {
+        ConditionExpression expression = ConditionExpression.parse("ALL(F) in 'a,b'");
+        assertTrue(expression.evaluate(name -> new String[] {"a", "b", "a"}));
+        assertFalse(expression.evaluate(name -> new String[] {"a", "c"}));
+        assertFalse(expression.evaluate(name -> null));
+    }
+
+    @Test
+    public void matchNamesAreParameterNamesWithoutParentheses() throws Exception {
+        assertTrue(ConditionExpression.parse("all == x").evaluate(values("all", "x")));
+    }
+
+    @Test
+    public void reportsErrorOffsets() {
+        assertError("A == x AND", "Expected a parameter name at the end of the expression", 10);
+        assertError("A == x )", "Unexpected ')'", 7);
+        assertError("A ?? x", "Unknown operator '??'", 2);
+        assertError("A == 'x", "Unterminated string", 5);
+        assertError("(A == x", "Expected ')' at the end of the expression", 7);
+        assertError("(A == x B", "Expected ')' but found 'B'", 8);
+        assertError("any(A == x", "Expected ')' but found '=='", 6);
+        assertError("'A' == x", "Expected a parameter name but found 'A'", 0);
+        assertError("A == AND", "Expected a value but found 'AND'", 5);
+    }
+
+    @Test
+    public void invalidExpressionNeverRestrictsVisibility() {
+        ConditionExpression expression = ConditionExpression.compile("A ==", null, "AND");
+        assertTrue(expression.evaluate(values("A", "x")));
+        assertEquals(FormValidation.Kind.ERROR, ConditionExpression.validate("A ==").kind);
+    }
+
+    @Test
+    public void conditionListsCombineWithOperator() {
+        List<ParameterCondition> conditions = Arrays.asList(
+                new ParameterCondition("A", "equals", "x"), new ParameterCondition("B", "equals", "x"));
+        ControlValues values = values("A", "x", "B", "y");
+        assertFalse(ConditionExpression.of(conditions, "AND").evaluate(values));
+        assertTrue(ConditionExpression.of(conditions, "OR").evaluate(values));
+        assertTrue(ConditionExpression.of(null, "AND").evaluate(values));
+    }
+
+    @Test
+    public void unmeasuredEvaluationAgreesWithEvaluation() throws Exception {
+        ConditionExpression expression = ConditionExpression.parse("A == x AND (B =~ 'b+' OR NOT C == x)");
+        for (String b : new String[] {"bb", "c"}) {
+            for (String c : new String[] {"x", "y"}) {
+                ControlValues values = values("A", "x", "B", b, "C", c);
+                assertEquals(expression.evaluate(values), expression.evaluateUnmeasured(values));
+            }
+        }
+    }
+
+    @Test
+    public void decisiveConditionsMoveFirst() throws Exception {
+        ConditionExpression expression = ConditionExpression.parse("A == x AND B == x");
+        ControlValues values = values("A", "x", "B", "y");
+        assertEquals(0, firstLeaf(expression));
+
+        for (int i = 0; i < 50_000; i++) {
+            assertFalse(expression.evaluate(values));
+        }
+        // A always holds and never decides the AND; B always fails and decides it
+        assertEquals(1, firstLeaf(expression));
+        assertEquals("B", expression.getConditions().get(1).getControlParameter());
+    }
+
+    @Test
+    public void unmeasuredEvaluationKeepsTheOrder() throws Exception {
+        ConditionExpression expression = ConditionExpression.parse("A == x OR B == x");
+        ControlValues values = values("A", "y", "B", "x");
+        for (int i = 0; i < 50_000; i++) {
+            assertTrue(expression.evaluateUnmeasured(values));
+        }
+        assertEquals(0, firstLeaf(expression));
+    }
+
+    private static int firstLeaf(ConditionExpression expression) {
+        return expression.toJson().getJSONArray("children").getJSONObject(0).getInt("leaf");
+    }
+
+    private static void assertError(String text, String message, int offset) {
+        ParseException e = assertThrows(ParseException.class, () -> ConditionExpression.parse(text));
+        assertEquals(text, message, e.getMessage());
+        assertEquals(text, offset, e.getErrorOffset());
+    }
+
+    private static ControlValues values(String... namesAndValues) {
+        Map<String, String[]> values = new HashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            values.put(namesAndValues[i], new String[] {namesAndValues[i + 1]});
+        }
+        return ControlValues.of(values);
+    }
+}
@@ -0,0 +1,69 @@
+package io.jenkins.plugins.smartparameter;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.ParametersDefinitionProperty;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ConditionPoolTest {
+
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    @Test
+    public void equalConditionsShareOneInstance() {
+        ParameterCondition first = ConditionPool.intern(new ParameterCondition("ENV", "equals", "prod"));
+        assertSame(first, ConditionPool.intern(new ParameterCondition("ENV", "equals", "prod")));
+        assertNotSame(first, ConditionPool.intern(new ParameterCondition("ENV", "equals", "prod", "all")));
+        assertNull(ConditionPool.intern((ParameterCondition) null));
+
+        List<ParameterCondition> interned = ConditionPool.intern(Arrays.asList(
+                new ParameterCondition("ENV", "equals", "prod"), new ParameterCondition("REGION", "equals", "eu")));
+        assertSame(first, interned.get(0));
+    }
+
+    @Test
+    public void definitionsShareTheirConditions() {
+        SmartParameterDefinition first = smart("A");
+        SmartParameterDefinition second = smart("B");
+        assertSame(first.getVisibilityConditions().get(0), second.getVisibilityConditions().get(0));
+
+        MultiConditionParameterDefinition multi = new MultiConditionParameterDefinition("C", "", "");
+        multi.setConditions(Arrays.asList(new ParameterCondition("ENV", "equals", "prod"),
+                new ParameterCondition("REGION", "equals", "eu")));
+        assertSame(first.getVisibilityConditions().get(0), multi.getConditions().get(0));
+    }
+
+    @Test
+    public void censusCountsReferencesAndInstances() throws Exception {
+        MultiConditionParameterDefinition multi = new MultiConditionParameterDefinition("C", "", "");
+        multi.setConditions(Arrays.asList(new ParameterCondition("ENV", "equals", "prod"),
+                new ParameterCondition("REGION", "equals", "eu")));
+
+        FreeStyleProject first = r.createFreeStyleProject();
+        first.addProperty(new ParametersDefinitionProperty(smart("A")));
+        FreeStyleProject second = r.createFreeStyleProject();
+        second.addProperty(new ParametersDefinitionProperty(smart("B"), multi));
+
+        assertArrayEquals(new long[] {2, 4}, ConditionPool.takeCensus());
+        assertEquals(2, ConditionPool.census().length);
+    }
+
+    private static SmartParameterDefinition smart(String name) {
+        SmartParameterDefinition parameter = new SmartParameterDefinition(name, "", "");
+        parameter.setControlParameter("ENV");
+        parameter.setCondition("equals");
+        parameter.setControlValue("prod");
+        return parameter;
+    }
+}
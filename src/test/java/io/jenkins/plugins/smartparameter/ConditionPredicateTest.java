@@ -0,0 +1,50 @@
+package io.jenkins.plugins.smartparameter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConditionPredicateTest {
+
+    @Test
+    public void anyMatchesIfOneDistinctValueDoes() {
+        ConditionPredicate predicate = ConditionPredicate.compile("F", "equals", "a", null);
+        assertTrue(predicate.matches(name -> new String[] {"b", "a"}));
+        assertFalse(predicate.matches(name -> new String[] {"b", "c"}));
+    }
+
+    @Test
+    public void allMatchesIfEveryDistinctValueDoes() {
+        ConditionPredicate predicate = ConditionPredicate.compile("F", "in", "a,b", ParameterCondition.MATCH_ALL);
+        assertTrue(predicate.matches(name -> new String[] {"a", "b", "a"}));
+        assertFalse(predicate.matches(name -> new String[] {"a", "c"}));
+    }
+
+    @Test
+    public void singleValueMatchesTheSameEitherWay() {
+        for (String match : new String[] {null, ParameterCondition.MATCH_ALL}) {
+            ConditionPredicate predicate = ConditionPredicate.compile("F", "notEquals", "a", match);
+            assertTrue(match, predicate.matches(name -> new String[] {"b"}));
+            assertFalse(match, predicate.matches(name -> new String[] {"a"}));
+        }
+    }
+
+    @Test
+    public void noValueNeverMatches() {
+        for (String match : new String[] {null, ParameterCondition.MATCH_ALL}) {
+            ConditionPredicate predicate = ConditionPredicate.compile("F", "notEquals", "a", match);
+            assertFalse(match, predicate.matches(name -> null));
+            assertFalse(match, predicate.matches(name -> new String[0]));
+        }
+    }
+
+    @Test
+    public void evaluationAgreesWithMatching() {
+        ConditionPredicate predicate = ConditionPredicate.compile("F", "startsWith", "eu", ParameterCondition.MATCH_ALL);
+        ControlValues values = name -> new String[] {"eu-1", "eu-2"};
+        for (int i = 0; i < 100; i++) {
+            assertTrue(predicate.evaluate(values));
+        }
+    }
+}
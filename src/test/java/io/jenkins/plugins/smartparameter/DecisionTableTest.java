@@ -0,0 +1,97 @@
+package io.jenkins.plugins.smartparameter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class DecisionTableTest {
+
+    private static final Map<String, List<String>> DOMAINS = new HashMap<>();
+
+    static {
+        DOMAINS.put("ENV", Arrays.asList("prod", "dev", "qa", "stage"));
+        DOMAINS.put("REGION", Arrays.asList("eu-1", "us-1", "eu-2"));
+        DOMAINS.put("MODE", Arrays.asList("fast", "safe"));
+    }
+
+    @Test
+    public void tableAgreesWithExpressionForEveryCombination() {
+        assertEquivalent("(ENV == prod AND REGION startsWith eu) OR ENV in 'dev,qa'");
+        assertEquivalent("NOT (ENV == prod OR MODE == safe) AND REGION =~ '.*-1'");
+        assertEquivalent("ENV != prod OR REGION notIn 'eu-2' AND NOT MODE endsWith st");
+    }
+
+    @Test
+    public void tableAgreesWithConditionList() {
+        MultiConditionParameterDefinition parameter = new MultiConditionParameterDefinition("P", "", "");
+        parameter.setConditions(Arrays.asList(new ParameterCondition("ENV", "notEquals", "prod"),
+                new ParameterCondition("MODE", "equals", "fast")));
+        parameter.setLogicalOperator("OR");
+        assertEquivalent(parameter);
+    }
+
+    @Test
+    public void valuesOutsideTheDomainAreLeftToTheExpression() {
+        DecisionTable table = DecisionTable.build(parameter("ENV == prod"), DOMAINS);
+        assertNotNull(table);
+        assertNull(table.lookup(name -> new String[] {"other"}));
+        assertNull(table.lookup(name -> new String[] {"prod", "dev"}));
+    }
+
+    @Test
+    public void onlyBuiltForFiniteDomains() {
+        assertNull(DecisionTable.build(parameter("ENV == prod AND FREE == x"), DOMAINS));
+
+        List<String> large = new ArrayList<>();
+        for (int i = 0; i < DecisionTable.MAX_CELLS; i++) {
+            large.add("v" + i);
+        }
+        assertNull(DecisionTable.build(parameter("LARGE == v1"),
+                Collections.singletonMap("LARGE", large)));
+    }
+
+    private static void assertEquivalent(String expression) {
+        assertEquivalent(parameter(expression));
+    }
+
+    private static void assertEquivalent(MultiConditionParameterDefinition parameter) {
+        DecisionTable table = DecisionTable.build(parameter, DOMAINS);
+        assertNotNull(table);
+        ConditionExpression expression = parameter.getConditionExpression();
+
+        for (String env : withNull(DOMAINS.get("ENV"))) {
+            for (String region : withNull(DOMAINS.get("REGION"))) {
+                for (String mode : withNull(DOMAINS.get("MODE"))) {
+                    Map<String, String[]> values = new HashMap<>();
+                    values.put("ENV", env == null ? null : new String[] {env});
+                    values.put("REGION", region == null ? null : new String[] {region});
+                    values.put("MODE", mode == null ? null : new String[] {mode});
+                    ControlValues controlValues = ControlValues.of(values);
+                    assertEquals(env + ", " + region + ", " + mode,
+                            expression.evaluate(controlValues), table.lookup(controlValues));
+                }
+            }
+        }
+    }
+
+    private static MultiConditionParameterDefinition parameter(String expression) {
+        MultiConditionParameterDefinition parameter = new MultiConditionParameterDefinition("P", "", "");
+        parameter.setExpression(expression);
+        return parameter;
+    }
+
+    private static List<String> withNull(List<String> domain) {
+        List<String> values = new ArrayList<>(domain);
+        values.add(null);
+        return values;
+    }
+}
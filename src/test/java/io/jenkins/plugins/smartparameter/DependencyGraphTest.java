@@ -0,0 +1,105 @@
+package io.jenkins.plugins.smartparameter;
+
+import hudson.model.StringParameterDefinition;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DependencyGraphTest {
+
+    @Test
+    public void readingItselfIsACycle() {
+        assertEquals(Arrays.asList("A", "A"),
+                DependencyGraph.findCycle(Collections.emptyList(), Collections.singleton("A"), "A"));
+    }
+
+    @Test
+    public void findsIndirectCycle() {
+        List<ConditionalParameter> parameters = Arrays.asList(smart("B", "C"), smart("C", "A"));
+        assertEquals(Arrays.asList("A", "B", "C", "A"),
+                DependencyGraph.findCycle(parameters, Collections.singleton("A"), "B"));
+    }
+
+    @Test
+    public void noCycleWithoutPathBack() {
+        List<ConditionalParameter> parameters = Arrays.asList(smart("B", "ENV"), smart("C", "B"));
+        assertNull(DependencyGraph.findCycle(parameters, Collections.singleton("A"), "C"));
+    }
+
+    @Test
+    public void referencedParametersCloseCycles() {
+        // W hides R and X when ENV says so; ENV reading R would make R hide itself
+        SmartWrapperParameterDefinition wrapper = wrapper("W", "X", "R", "ENV");
+        assertEquals(Arrays.asList("ENV", "R", "ENV"),
+                DependencyGraph.findCycle(Collections.singletonList(wrapper), Collections.singleton("ENV"), "R"));
+        assertEquals(Arrays.asList("ENV", "X", "ENV"),
+                DependencyGraph.findCycle(Collections.singletonList(wrapper), Collections.singleton("ENV"), "X"));
+    }
+
+    @Test
+    public void wrapperChecksEveryNameItControls() {
+        SmartWrapperParameterDefinition other = wrapper("OTHER", "Y", null, "R");
+        Set<String> controlled = wrapper("W", "X", "R", "Y").getControlledParameters();
+        assertEquals(Arrays.asList("R", "Y", "R"),
+                DependencyGraph.findCycle(Collections.singletonList(other), controlled, "Y"));
+    }
+
+    @Test
+    public void ordersControllersBeforeDependents() {
+        SmartParameterDefinition x = smart("X", "Y");
+        SmartParameterDefinition y = smart("Y", "ENV");
+        SmartParameterDefinition z = smart("Z", "ENV");
+        DependencyGraph graph = DependencyGraph.of(Arrays.asList(x, y, z));
+        assertEquals(Arrays.asList(y, z, x), graph.getEvaluationOrder());
+        assertTrue(graph.getCyclicParameters().isEmpty());
+    }
+
+    @Test
+    public void cyclicParametersAndTheirDependentsComeLast() {
+        SmartParameterDefinition a = smart("A", "B");
+        SmartParameterDefinition b = smart("B", "A");
+        SmartParameterDefinition c = smart("C", "A");
+        SmartParameterDefinition d = smart("D", "ENV");
+        DependencyGraph graph = DependencyGraph.of(Arrays.asList(a, b, c, d));
+        assertEquals(Arrays.asList(a, b, c), graph.getCyclicParameters());
+        assertEquals(Arrays.asList(d, a, b, c), graph.getEvaluationOrder());
+    }
+
+    @Test
+    public void hiddenParameterHidesItsDependents() {
+        SmartParameterDefinition y = smart("Y", "ENV");
+        SmartParameterDefinition x = smart("X", "Y");
+        DependencyGraph graph = DependencyGraph.of(Arrays.asList(x, y));
+        // Y has a value that would show X, but Y itself is hidden
+        assertFalse(graph.evaluate(name -> "ENV".equals(name) ? new String[] {"off"} : new String[] {"on"})
+                .get("X"));
+        assertTrue(graph.evaluate(name -> new String[] {"on"}).get("X"));
+    }
+
+    private static SmartParameterDefinition smart(String name, String controlParameter) {
+        SmartParameterDefinition parameter = new SmartParameterDefinition(name, "", "");
+        parameter.setControlParameter(controlParameter);
+        parameter.setCondition("equals");
+        parameter.setControlValue("on");
+        return parameter;
+    }
+
+    private static SmartWrapperParameterDefinition wrapper(String name, String wrapped, String refParameter,
+                                                           String controlParameter) {
+        SmartWrapperParameterDefinition parameter = new SmartWrapperParameterDefinition(name, "");
+        parameter.setWrappedParameter(new StringParameterDefinition(wrapped, "", ""));
+        parameter.setRefParameter(refParameter);
+        parameter.setControlParameter(controlParameter);
+        parameter.setCondition("equals");
+        parameter.setControlValue("on");
+        return parameter;
+    }
+}
@@ -0,0 +1,49 @@
+package io.jenkins.plugins.smartparameter;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.ParametersAction;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.StringParameterDefinition;
+import hudson.model.StringParameterValue;
+import org.htmlunit.html.HtmlPage;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class HiddenParameterValueTest {
+
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    @Test
+    public void parametersPageShowsHiddenValue() throws Exception {
+        SmartParameterDefinition target = new SmartParameterDefinition("TARGET", "", "safe");
+        target.setControlParameter("ENV");
+        target.setCondition("equals");
+        target.setControlValue("prod");
+        target.setOmitWhenHidden(true);
+
+        FreeStyleProject project = r.createFreeStyleProject("x");
+        project.addProperty(new ParametersDefinitionProperty(
+                new StringParameterDefinition("ENV", "dev", ""), target));
+        FreeStyleBuild build = r.assertBuildStatusSuccess(project.scheduleBuild2(0, new ParametersAction(
+                new StringParameterValue("ENV", "dev"), new StringParameterValue("TARGET", "entered"))));
+        assertTrue(build.getAction(ParametersAction.class).getParameter("TARGET") instanceof HiddenParameterValue);
+
+        HtmlPage page = r.createWebClient().goTo("job/x/1/parameters/");
+        assertNotNull("no placeholder rendered", page.querySelector(".smart-parameter-hidden-value"));
+        String text = page.asNormalizedText();
+        assertTrue(text, text.contains("TARGET"));
+        assertTrue(text, text.contains("hidden"));
+    }
+
+    @Test
+    public void shortDescriptionNamesTheParameter() {
+        assertEquals("TARGET (hidden)", HiddenParameterValue.of("TARGET").getShortDescription());
+    }
+}
@@ -0,0 +1,68 @@
+package io.jenkins.plugins.smartparameter;
+
+import hudson.model.ChoiceParameterDefinition;
+import hudson.model.FreeStyleProject;
+import hudson.model.ParameterDefinition;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.StringParameterDefinition;
+import org.htmlunit.html.HtmlPage;
+import org.htmlunit.html.HtmlSelect;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestExtension;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Renders the build form of a job with a lazily rendered wrapper in a browser with JavaScript enabled.
+ */
+public class LazyFragmentTest {
+
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    @Test
+    public void fragmentScriptsRunWhenWrapperIsShown() throws Exception {
+        SmartWrapperParameterDefinition wrapper = new SmartWrapperParameterDefinition("WRAPPER", "");
+        wrapper.setWrappedParameter(new ScriptedParameterDefinition("SCRIPTED"));
+        wrapper.setControlParameter("ENV");
+        wrapper.setCondition("equals");
+        wrapper.setControlValue("show");
+        wrapper.setLazyRendering(true);
+
+        FreeStyleProject project = r.createFreeStyleProject();
+        project.addProperty(new ParametersDefinitionProperty(
+                new ChoiceParameterDefinition("ENV", new String[] {"hide", "show"}, ""), wrapper));
+
+        JenkinsRule.WebClient wc = r.createWebClient();
+        HtmlPage page = wc.goTo(project.getUrl() + "build?delay=0sec");
+        assertNull("rendered before it is shown", page.querySelector(".scripted-parameter"));
+        assertEquals("", page.getBody().getAttribute("data-fragment-script"));
+
+        HtmlSelect env = page.querySelector("select[name='value']");
+        env.setSelectedAttribute("show", true);
+        wc.waitForBackgroundJavaScript(5_000);
+
+        assertNotNull("fragment not inserted", page.querySelector(".smart-wrapped-content .scripted-parameter"));
+        assertEquals("fragment scripts did not run", "ran", page.getBody().getAttribute("data-fragment-script"));
+    }
+
+    /**
+     * String parameter whose form runs an inline script, like those of many parameter plugins.
+     */
+    public static class ScriptedParameterDefinition extends StringParameterDefinition {
+        public ScriptedParameterDefinition(String name) {
+            super(name, "default", "");
+        }
+
+        @TestExtension
+        public static class DescriptorImpl extends ParameterDefinition.ParameterDescriptor {
+            public DescriptorImpl() {
+                super(ScriptedParameterDefinition.class);
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package io.jenkins.plugins.smartparameter;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RegexSupportTest {
+
+    @Test
+    public void backreferencesAndLookaroundNeedBacktracking() {
+        assertTrue(RegexSupport.needsBacktracking("(a)\\1"));
+        assertTrue(RegexSupport.needsBacktracking("(?<x>a)\\k<x>"));
+        assertTrue(RegexSupport.needsBacktracking("a(?=b)"));
+        assertTrue(RegexSupport.needsBacktracking("a(?!b)"));
+        assertTrue(RegexSupport.needsBacktracking("(?<=a)b"));
+        assertTrue(RegexSupport.needsBacktracking("(?<!a)b"));
+    }
+
+    @Test
+    public void escapedBackslashesAndClassesAreNotBackreferences() {
+        assertFalse(RegexSupport.needsBacktracking("a\\\\1"));
+        assertTrue(RegexSupport.needsBacktracking("(a)\\\\\\1"));
+        assertFalse(RegexSupport.needsBacktracking("[\\1]"));
+        assertFalse(RegexSupport.needsBacktracking("[(?=]"));
+        assertFalse(RegexSupport.needsBacktracking("\\(?=a"));
+        assertFalse(RegexSupport.needsBacktracking("(?<name>a)"));
+        assertFalse(RegexSupport.needsBacktracking("(?:a|b)\\d+"));
+    }
+
+    @Test
+    public void nestedRepetitionCanBacktrack() {
+        assertTrue(RegexSupport.canBacktrack("(a+)+"));
+        assertTrue(RegexSupport.canBacktrack("(a|ab)*"));
+        assertTrue(RegexSupport.canBacktrack("((ab)*c)+"));
+        assertFalse(RegexSupport.canBacktrack("(ab)+"));
+        assertFalse(RegexSupport.canBacktrack("a+b*"));
+        assertFalse(RegexSupport.canBacktrack("([+*])+"));
+        assertFalse(RegexSupport.canBacktrack("(\\+)+"));
+    }
+
+    @Test
+    public void matchesTheWholeValue() {
+        Predicate<String> regex = RegexSupport.compile("prod|stage");
+        assertTrue(regex.test("prod"));
+        assertFalse(regex.test("production"));
+    }
+
+    @Test
+    public void slowMatchesRunOutOfBudget() {
+        Predicate<String> regex = RegexSupport.compile("(.*a){20}");
+        char[] input = new char[40];
+        Arrays.fill(input, 'a');
+        int exceeded = RegexSupport.budgetExceededCount();
+
+        long start = System.nanoTime();
+        assertFalse(regex.test(new String(input) + "!"));
+        assertTrue("took too long", System.nanoTime() - start < 20 * RegexSupport.BUDGET_MILLIS * 1_000_000);
+        assertEquals(exceeded + 1, RegexSupport.budgetExceededCount());
+
+        assertFalse(regex.test("b"));
+        assertEquals(exceeded + 1, RegexSupport.budgetExceededCount());
+    }
+
+    @Test
+    public void warnsAboutPatternsThatCanBacktrack() {
+        assertNotNull(RegexSupport.backtrackingWarning("(a)\\1"));
+        assertNotNull(RegexSupport.backtrackingWarning("(a+)+"));
+        assertNull(RegexSupport.backtrackingWarning("a\\\\1"));
+    }
+}
@@ -0,0 +1,63 @@
+package io.jenkins.plugins.smartparameter;
+
+import net.sf.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SmartParameterMetricsTest {
+
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    @Test
+    public void mbeanCountsEvaluations() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(SmartParameterMetrics.OBJECT_NAME);
+        assertTrue(server.isRegistered(name));
+
+        long before = (Long) server.getAttribute(name, "VisibilityEvaluations");
+        SmartParameterDefinition parameter = new SmartParameterDefinition("TARGET", "", "");
+        parameter.setControlParameter("ENV");
+        parameter.setCondition("equals");
+        parameter.setControlValue("prod");
+        parameter.isVisible(n -> new String[] {"prod"});
+        assertEquals(before + 1, (long) (Long) server.getAttribute(name, "VisibilityEvaluations"));
+    }
+
+    @Test
+    public void registrationIsReplacedAndRemoved() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(SmartParameterMetrics.OBJECT_NAME);
+
+        // As a restart in the same JVM does
+        SmartParameterMetrics.registerMBean();
+        assertTrue(server.isRegistered(name));
+
+        SmartParameterMetrics.unregisterMBean();
+        assertFalse(server.isRegistered(name));
+        SmartParameterMetrics.unregisterMBean();
+
+        SmartParameterMetrics.registerMBean();
+        assertTrue(server.isRegistered(name));
+    }
+
+    @Test
+    public void endpointReportsMetrics() throws Exception {
+        String content = r.createWebClient().goTo("smart-parameters/metrics", "application/json")
+                .getWebResponse().getContentAsString();
+        JSONObject metrics = JSONObject.fromObject(content);
+        assertTrue(metrics.has("counters"));
+        assertTrue(metrics.has("conditions"));
+        assertTrue(metrics.has("timers"));
+        assertTrue(metrics.has("jobs"));
+    }
+}
@@ -0,0 +1,71 @@
+package io.jenkins.plugins.smartparameter;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.StringParameterDefinition;
+import net.sf.json.JSONObject;
+import org.htmlunit.HttpMethod;
+import org.htmlunit.WebRequest;
+import org.htmlunit.WebResponse;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SmartParametersActionTest {
+
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    @Test
+    public void evaluatesSubmittedValues() throws Exception {
+        FreeStyleProject project = createProject();
+        assertTrue(visibility(evaluate(project, "{\"ENV\": \"prod\"}")).getBoolean("TARGET"));
+        assertFalse(visibility(evaluate(project, "{\"ENV\": \"dev\"}")).getBoolean("TARGET"));
+    }
+
+    @Test
+    public void missingValuesUseTheirDefault() throws Exception {
+        assertFalse(visibility(evaluate(createProject(), "{}")).getBoolean("TARGET"));
+    }
+
+    @Test
+    public void arraysAreMultipleValues() throws Exception {
+        assertTrue(visibility(evaluate(createProject(), "{\"ENV\": [\"dev\", \"prod\"]}")).getBoolean("TARGET"));
+    }
+
+    @Test
+    public void rejectsBodiesThatAreNotObjects() throws Exception {
+        assertEquals(400, evaluate(createProject(), "[1, 2").getStatusCode());
+    }
+
+    private FreeStyleProject createProject() throws Exception {
+        SmartParameterDefinition target = new SmartParameterDefinition("TARGET", "", "safe");
+        target.setControlParameter("ENV");
+        target.setCondition("equals");
+        target.setControlValue("prod");
+
+        FreeStyleProject project = r.createFreeStyleProject();
+        project.addProperty(new ParametersDefinitionProperty(
+                new StringParameterDefinition("ENV", "dev", ""), target));
+        return project;
+    }
+
+    private WebResponse evaluate(FreeStyleProject project, String body) throws Exception {
+        JenkinsRule.WebClient wc = r.createWebClient();
+        wc.getOptions().setThrowExceptionOnFailingStatusCode(false);
+        WebRequest request = new WebRequest(wc.createCrumbedUrl(project.getUrl() + "smartParameters/evaluate"),
+                HttpMethod.POST);
+        request.setAdditionalHeader("Content-Type", "application/json");
+        request.setRequestBody(body);
+        return wc.loadWebResponse(request);
+    }
+
+    private static JSONObject visibility(WebResponse response) {
+        assertEquals(response.getContentAsString(), 200, response.getStatusCode());
+        return JSONObject.fromObject(response.getContentAsString()).getJSONObject("visibility");
+    }
+}
@@ -0,0 +1,92 @@
+package io.jenkins.plugins.smartparameter;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VisibilityCacheTest {
+
+    @Test
+    public void repeatedValuesAreEvaluatedOnce() {
+        VisibilityCache cache = new VisibilityCache("field", Arrays.asList("ENV", "REGION"));
+        AtomicInteger evaluations = new AtomicInteger();
+        Predicate<ControlValues> evaluator = values -> {
+            evaluations.incrementAndGet();
+            return "prod".equals(values.get("ENV")[0]);
+        };
+
+        assertTrue(cache.isVisible(values("ENV", "prod", "REGION", "eu"), evaluator));
+        assertTrue(cache.isVisible(values("ENV", "prod", "REGION", "eu"), evaluator));
+        assertFalse(cache.isVisible(values("ENV", "dev", "REGION", "eu"), evaluator));
+        assertEquals(2, evaluations.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void keepsItsOwnCopyOfTheValues() {
+        VisibilityCache cache = new VisibilityCache("field", Arrays.asList("ENV"));
+        Predicate<ControlValues> evaluator = values -> "prod".equals(values.get("ENV")[0]);
+        String[] env = {"prod"};
+        ControlValues values = name -> env;
+
+        assertTrue(cache.isVisible(values, evaluator));
+        env[0] = "dev";
+        assertFalse(cache.isVisible(values, evaluator));
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void missingAndMultipleValuesAreDistinctKeys() {
+        VisibilityCache cache = new VisibilityCache("field", Arrays.asList("ENV"));
+        Predicate<ControlValues> evaluator = values -> values.get("ENV") != null && values.get("ENV").length == 1;
+
+        for (int i = 0; i < 2; i++) {
+            assertFalse(cache.isVisible(name -> null, evaluator));
+            assertTrue(cache.isVisible(name -> new String[] {"a"}, evaluator));
+            assertFalse(cache.isVisible(name -> new String[] {"a", "b"}, evaluator));
+        }
+    }
+
+    @Test
+    public void staysBounded() {
+        VisibilityCache cache = new VisibilityCache("field", Arrays.asList("ENV"));
+        for (int i = 0; i < VisibilityCache.MAX_SIZE * 10; i++) {
+            String value = "v" + i;
+            cache.isVisible(name -> new String[] {value}, values -> true);
+        }
+        assertTrue(cache.size() > 0);
+        assertTrue(cache.size() <= VisibilityCache.MAX_SIZE);
+    }
+
+    @Test
+    public void resultsCutOffByTheRegexBudgetAreNotCached() {
+        VisibilityCache cache = new VisibilityCache("field", Arrays.asList("ENV"));
+        Predicate<String> regex = RegexSupport.compile("(.*a){20}");
+        char[] input = new char[40];
+        Arrays.fill(input, 'a');
+        String value = new String(input) + "!";
+        Predicate<ControlValues> evaluator = values -> regex.test(values.get("ENV")[0]);
+
+        assertFalse(cache.isVisible(name -> new String[] {value}, evaluator));
+        assertEquals(0, cache.size());
+        assertFalse(cache.isVisible(name -> new String[] {value}, evaluator));
+        assertEquals(0, cache.getHits());
+    }
+
+    private static ControlValues values(String... namesAndValues) {
+        Map<String, String[]> values = new HashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            values.put(namesAndValues[i], new String[] {namesAndValues[i + 1]});
+        }
+        return ControlValues.of(values);
+    }
+}
@@ -0,0 +1,98 @@
+package io.jenkins.plugins.smartparameter;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.ParameterDefinition;
+import hudson.model.ParameterValue;
+import hudson.model.ParametersAction;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.StringParameterDefinition;
+import hudson.model.StringParameterValue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Builds triggered without the form, with values for hidden parameters.
+ */
+public class VisibilityEnforcerTest {
+
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    @Test
+    public void hiddenParameterIsNotRecordedWhenItOptsIn() throws Exception {
+        FreeStyleProject project = createProject(true);
+        assertTrue(parameter(build(project, "dev"), "TARGET") instanceof HiddenParameterValue);
+        assertEquals("entered", parameter(build(project, "prod"), "TARGET").getValue());
+    }
+
+    @Test
+    public void otherParametersKeepTheirValues() throws Exception {
+        FreeStyleProject project = createProject(false);
+        assertEquals("entered", parameter(build(project, "dev"), "TARGET").getValue());
+    }
+
+    @Test
+    public void defaultsOfParametersNoConditionReadsAreNotComputed() throws Exception {
+        CountingParameterDefinition unread = new CountingParameterDefinition("UNREAD");
+        FreeStyleProject project = createProject(true, unread);
+        assertTrue(parameter(build(project, "dev"), "TARGET") instanceof HiddenParameterValue);
+        assertEquals(0, unread.defaults.get());
+    }
+
+    private FreeStyleProject createProject(boolean omitWhenHidden, ParameterDefinition... others) throws Exception {
+        SmartParameterDefinition target = new SmartParameterDefinition("TARGET", "", "safe");
+        target.setControlParameter("ENV");
+        target.setCondition("equals");
+        target.setControlValue("prod");
+        target.setOmitWhenHidden(omitWhenHidden);
+
+        List<ParameterDefinition> definitions = new ArrayList<>();
+        definitions.add(new StringParameterDefinition("ENV", "dev", ""));
+        definitions.add(target);
+        definitions.addAll(Arrays.asList(others));
+        FreeStyleProject project = r.createFreeStyleProject();
+        project.addProperty(new ParametersDefinitionProperty(definitions));
+        return project;
+    }
+
+    private FreeStyleBuild build(FreeStyleProject project, String env) throws Exception {
+        List<ParameterValue> values = new ArrayList<>();
+        values.add(new StringParameterValue("ENV", env));
+        values.add(new StringParameterValue("TARGET", "entered"));
+        if (project.getProperty(ParametersDefinitionProperty.class).getParameterDefinition("UNREAD") != null) {
+            values.add(new StringParameterValue("UNREAD", "given"));
+        }
+        return r.assertBuildStatusSuccess(project.scheduleBuild2(0, new ParametersAction(values)));
+    }
+
+    private static ParameterValue parameter(FreeStyleBuild build, String name) {
+        return build.getAction(ParametersAction.class).getParameter(name);
+    }
+
+    /**
+     * Counts how often its default is computed, like a parameter whose default runs a script.
+     */
+    private static final class CountingParameterDefinition extends StringParameterDefinition {
+        private final transient AtomicInteger defaults = new AtomicInteger();
+
+        CountingParameterDefinition(String name) {
+            super(name, "default", "");
+        }
+
+        @Override
+        public StringParameterValue getDefaultParameterValue() {
+            defaults.incrementAndGet();
+            return super.getDefaultParameterValue();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package io.jenkins.plugins.smartparameter;
+
+import hudson.model.StringParameterDefinition;
+import hudson.model.StringParameterValue;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+public class VisibilityEvaluatorTest {
+
+    @Test
+    public void splitsSelectionsJoinedByMultiSelects() {
+        MultiSelectParameterDefinition multiSelect = new MultiSelectParameterDefinition("PT_MULTI_SELECT");
+        assertArrayEquals(new String[] {"a", "b"},
+                VisibilityEvaluator.toStrings(multiSelect, new StringParameterValue("F", "a,b")));
+        assertNull(VisibilityEvaluator.toStrings(multiSelect, new StringParameterValue("F", "")));
+    }
+
+    @Test
+    public void keepsSingleValuesWhole() {
+        assertArrayEquals(new String[] {"a,b"}, VisibilityEvaluator.toStrings(
+                new MultiSelectParameterDefinition("PT_SINGLE_SELECT"), new StringParameterValue("F", "a,b")));
+        assertArrayEquals(new String[] {"a,b"}, VisibilityEvaluator.toStrings(
+                new StringParameterDefinition("F", "", ""), new StringParameterValue("F", "a,b")));
+        assertArrayEquals(new String[] {"a,b"},
+                VisibilityEvaluator.toStrings(null, new StringParameterValue("F", "a,b")));
+    }
+
+    /**
+     * Exposes the accessors of an Extended Choice parameter.
+     */
+    public static final class MultiSelectParameterDefinition extends StringParameterDefinition {
+        private final String type;
+
+        MultiSelectParameterDefinition(String type) {
+            super("F", "", "");
+            this.type = type;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getMultiSelectDelimiter() {
+            return ",";
+        }
+    }
+}